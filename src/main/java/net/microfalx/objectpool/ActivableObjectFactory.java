@@ -1,5 +1,7 @@
 package net.microfalx.objectpool;
 
+import java.util.Collection;
+
 /**
  * An object pool which allows objects to be <code>activated</code> before they can be used.
  * <p>
@@ -25,4 +27,36 @@ public interface ActivableObjectFactory<T> extends ObjectFactory<T> {
      * @param object the pooled object
      */
     void deactivateObject(ObjectPool<T> pool, PooledObject<T> object) throws Exception;
+
+    /**
+     * Activates several instances borrowed together.
+     * <p>
+     * Factories which can activate several objects in one operation (one round-trip to a remote service) should
+     * override this method. If activation fails, all objects are destroyed, since the pool cannot tell which objects
+     * were activated.
+     *
+     * @param pool    the pool which requested the objects to be activated
+     * @param objects the pooled objects
+     * @see ObjectPool#borrowObjects(int, java.time.Duration)
+     */
+    default void activateObjects(ObjectPool<T> pool, Collection<? extends PooledObject<T>> objects) throws Exception {
+        for (PooledObject<T> object : objects) {
+            activateObject(pool, object);
+        }
+    }
+
+    /**
+     * Deactivates several instances returned together.
+     * <p>
+     * If deactivation fails, all objects are destroyed.
+     *
+     * @param pool    the pool which requested the objects to be deactivated
+     * @param objects the pooled objects
+     * @see ObjectPool#returnObjects(Collection)
+     */
+    default void deactivateObjects(ObjectPool<T> pool, Collection<? extends PooledObject<T>> objects) throws Exception {
+        for (PooledObject<T> object : objects) {
+            deactivateObject(pool, object);
+        }
+    }
 }
@@ -0,0 +1,105 @@
+package net.microfalx.objectpool;
+
+import static net.microfalx.lang.ArgumentUtils.requireNonNull;
+
+/**
+ * Decides how many objects a pool should hold, from the load measured since the previous decision.
+ * <p>
+ * The number of objects in use is estimated with Little's law: the rate of borrows multiplied by the average time
+ * objects are held. The target leaves some headroom above this demand, grows at least twice as fast when borrowers
+ * wait and shrinks by a small step at a time, so a short lull does not destroy objects needed a moment later.
+ * <p>
+ * Instances are not thread-safe, decisions are taken by a single task.
+ */
+final class AutoSizer {
+
+    private static final float HEADROOM = 1.25f;
+    private static final float SHRINK_STEP = 0.1f;
+    private static final long WAIT_THRESHOLD = 1_000_000;
+
+    private final ObjectPoolMetricsImpl metrics;
+    private final int minimum;
+    private final int maximum;
+
+    private int target;
+    private long lastTime;
+    private long lastBorrowedCount;
+    private long lastReleasedCount;
+    private long lastHoldTime;
+    private long lastWaitCount;
+    private long lastWaitTime;
+
+    /**
+     * Creates an auto-sizer, which starts from the maximum number of objects.
+     *
+     * @param metrics     the metrics of the pool
+     * @param minimum     the minimum number of objects
+     * @param maximum     the maximum number of objects
+     * @param currentTime the current time, in {@link System#nanoTime()} units
+     */
+    AutoSizer(ObjectPoolMetricsImpl metrics, int minimum, int maximum, long currentTime) {
+        requireNonNull(metrics);
+        this.metrics = metrics;
+        this.maximum = Math.max(1, maximum);
+        this.minimum = Math.min(Math.max(1, minimum), this.maximum);
+        this.target = this.maximum;
+        this.lastTime = currentTime;
+        this.lastBorrowedCount = metrics.getBorrowedCount();
+        this.lastReleasedCount = metrics.getReleasedCount();
+        this.lastHoldTime = metrics.getBorrowedDuration().toNanos();
+        this.lastWaitCount = metrics.getBorrowWaitHistogram().getCount();
+        this.lastWaitTime = metrics.getBorrowWaitHistogram().getSum();
+        metrics.updateTargetSize(target);
+    }
+
+    /**
+     * Returns the number of objects the pool aims to hold.
+     *
+     * @return a positive integer
+     */
+    int getTarget() {
+        return target;
+    }
+
+    /**
+     * Decides the number of objects the pool aims to hold and publishes the decision in the metrics of the pool.
+     *
+     * @param currentTime the current time, in {@link System#nanoTime()} units
+     * @param activeCount the number of borrowed objects
+     * @param queued      {@code true} if borrowers are waiting for objects, {@code false} otherwise
+     * @return the new target
+     */
+    int resize(long currentTime, int activeCount, boolean queued) {
+        long borrowedCount = metrics.getBorrowedCount();
+        long releasedCount = metrics.getReleasedCount();
+        long holdTime = metrics.getBorrowedDuration().toNanos();
+        long waitCount = metrics.getBorrowWaitHistogram().getCount();
+        long waitTime = metrics.getBorrowWaitHistogram().getSum();
+        float elapsed = Math.max(1, currentTime - lastTime) / 1e9f;
+        float arrivalRate = (borrowedCount - lastBorrowedCount) / elapsed;
+        long returns = releasedCount - lastReleasedCount;
+        float averageHoldTime = returns > 0 ? (holdTime - lastHoldTime) / (returns * 1e9f) : 0;
+        long waits = waitCount - lastWaitCount;
+        long averageWaitTime = waits > 0 ? (waitTime - lastWaitTime) / waits : 0;
+        float demand = Math.max(arrivalRate * averageHoldTime, activeCount);
+
+        int desired = (int) Math.ceil(demand * HEADROOM);
+        if (queued || averageWaitTime > WAIT_THRESHOLD) {
+            target = Math.max(desired, Math.max(target + 1, target * 2));
+        } else if (desired > target) {
+            target = desired;
+        } else if (desired < target) {
+            target = Math.max(desired, target - Math.max(1, (int) (target * SHRINK_STEP)));
+        }
+        target = Math.min(maximum, Math.max(minimum, target));
+
+        lastTime = currentTime;
+        lastBorrowedCount = borrowedCount;
+        lastReleasedCount = releasedCount;
+        lastHoldTime = holdTime;
+        lastWaitCount = waitCount;
+        lastWaitTime = waitTime;
+        metrics.updateAutoSizing(target, arrivalRate, demand);
+        return target;
+    }
+}
@@ -0,0 +1,140 @@
+package net.microfalx.objectpool;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Implementation of {@link ObjectPool.Budget}.
+ * <p>
+ * When the budget is exhausted, an idle object is destroyed in the pool whose borrowers waited the least (on average)
+ * recently, and capacity given back is offered to the starving pool, chosen among the pools with waiting borrowers as
+ * the one whose borrowers waited the most. The recent wait of a pool is the average of the borrow waits recorded since
+ * the previous refresh, refreshed at most once per {@link #REFRESH_INTERVAL}, so the decisions follow the current
+ * pressure instead of the whole life of the pools. The wait is computed from the sum and the count of the borrow wait
+ * histogram, without copying its buckets.
+ */
+final class BudgetImpl extends SharedCapacity implements ObjectPool.Budget {
+
+    private static final long REFRESH_INTERVAL = 1_000_000_000L;
+
+    private final Map<ObjectPoolImpl<?>, Pressure> pools = new ConcurrentHashMap<>();
+
+    BudgetImpl(int maximum) {
+        super(maximum);
+    }
+
+    @Override
+    public int getCapacity() {
+        return getMaximum();
+    }
+
+    @Override
+    public int getSize() {
+        return getUsed();
+    }
+
+    @Override
+    public Map<ObjectPool<?>, Integer> getUsage() {
+        Map<ObjectPool<?>, Integer> usage = new LinkedHashMap<>();
+        for (ObjectPool<?> pool : ObjectPool.getPools()) {
+            if (pool.getOptions().getBudget() == this) usage.put(pool, pool.getSize());
+        }
+        return Collections.unmodifiableMap(usage);
+    }
+
+    @Override
+    void attach(ObjectPoolImpl<?> pool) {
+        LatencyHistogram histogram = ((ObjectPoolMetricsImpl) pool.getMetrics()).getBorrowWaitHistogram();
+        pools.put(pool, new Pressure(histogram));
+    }
+
+    @Override
+    void detach(ObjectPoolImpl<?> pool) {
+        super.detach(pool);
+        pools.remove(pool);
+    }
+
+    @Override
+    boolean reclaim(ObjectPoolImpl<?> pool) {
+        ObjectPoolImpl<?> victim = null;
+        long victimWait = Long.MAX_VALUE;
+        for (Map.Entry<ObjectPoolImpl<?>, Pressure> entry : pools.entrySet()) {
+            ObjectPoolImpl<?> nextPool = entry.getKey();
+            if (nextPool == pool) continue;
+            if (nextPool.getSize(PooledObject.State.IDLE) <= nextPool.getOptions().getMinimum()) continue;
+            long wait = entry.getValue().getWait();
+            if (wait < victimWait) {
+                victim = nextPool;
+                victimWait = wait;
+            }
+        }
+        return victim != null && victim.evictIdle();
+    }
+
+    @Override
+    ObjectPoolImpl<?> findStarving(ObjectPoolImpl<?> excludedPool) {
+        ObjectPoolImpl<?> starving = null;
+        long starvingWait = -1;
+        for (Map.Entry<ObjectPoolImpl<?>, Pressure> entry : pools.entrySet()) {
+            ObjectPoolImpl<?> nextPool = entry.getKey();
+            if (nextPool == excludedPool || !nextPool.hasWaiters()) continue;
+            long wait = entry.getValue().getWait();
+            if (wait > starvingWait) {
+                starving = nextPool;
+                starvingWait = wait;
+            }
+        }
+        return starving;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", BudgetImpl.class.getSimpleName() + "[", "]")
+                .add("pools=" + pools.size())
+                .add("size=" + getUsed())
+                .add("capacity=" + getMaximum())
+                .toString();
+    }
+
+    /**
+     * The recent average borrow wait of a pool.
+     */
+    private static final class Pressure {
+
+        private final LatencyHistogram histogram;
+        private volatile long wait;
+        private volatile long updated = System.nanoTime();
+        private long count;
+        private long sum;
+
+        private Pressure(LatencyHistogram histogram) {
+            this.histogram = histogram;
+            this.count = histogram.getCount();
+            this.sum = histogram.getSum();
+        }
+
+        /**
+         * Returns the average borrow wait, refreshed from the borrows since the previous refresh.
+         *
+         * @return the wait, in nanoseconds
+         */
+        long getWait() {
+            long currentTime = System.nanoTime();
+            if (currentTime - updated >= REFRESH_INTERVAL) {
+                synchronized (this) {
+                    if (currentTime - updated < REFRESH_INTERVAL) return wait;
+                    long currentCount = histogram.getCount();
+                    long currentSum = histogram.getSum();
+                    wait = currentCount > count ? (currentSum - sum) / (currentCount - count) : 0;
+                    count = currentCount;
+                    sum = currentSum;
+                    updated = currentTime;
+                }
+            }
+            return wait;
+        }
+    }
+}
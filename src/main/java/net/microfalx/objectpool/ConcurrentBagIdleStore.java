@@ -0,0 +1,169 @@
+package net.microfalx.objectpool;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An idle store which serves {@link ObjectPool.Strategy#THREAD_AFFINITY} pools.
+ * <p>
+ * Every object known to the store sits in a slot of a shared array; a destroyed object frees its slot, which is
+ * reused by the next object created, so the array is only copied when it grows. Ownership of an idle object is
+ * decided with a single compare-and-set on the pooled object, so borrow and return never take a lock.
+ * <p>
+ * Each thread remembers the slots of the objects it returned last and tries to reclaim them first; when none of
+ * them is still idle, the thread steals any idle object from the shared array. The threads remember positions and
+ * not objects, so a thread which outlives the pool does not keep its objects reachable. A count of available
+ * objects lets a borrower give up without scanning the array when the pool is saturated.
+ *
+ * @param <T> the type of pooled objects
+ */
+final class ConcurrentBagIdleStore<T> implements IdleStore<T> {
+
+    private static final int MAXIMUM_LOCAL_OBJECTS = 16;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final Lock lock = new ReentrantLock();
+    private volatile AtomicReferenceArray<PooledObjectImpl<T>> shared = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    private final LongAdder available = new LongAdder();
+    private final ThreadLocal<LocalSlots> local = ThreadLocal.withInitial(LocalSlots::new);
+
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int usedCount;
+
+    @Override
+    public void add(PooledObjectImpl<T> object) {
+        lock.lock();
+        try {
+            int slot;
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                AtomicReferenceArray<PooledObjectImpl<T>> objects = shared;
+                if (usedCount == objects.length()) shared = objects = grow(objects);
+                slot = usedCount++;
+            }
+            object.setSlot(slot);
+            shared.set(slot, object);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void offer(PooledObjectImpl<T> object) {
+        int slot = object.getSlot();
+        if (slot >= 0) local.get().push(slot);
+        // count before releasing, a concurrent borrower can only see more available objects than there are
+        available.increment();
+        object.release();
+    }
+
+    @Override
+    public PooledObjectImpl<T> poll() {
+        PooledObjectImpl<T> object = pollLocal();
+        return object != null ? object : pollShared();
+    }
+
+    @Override
+    public int poll(Collection<PooledObjectImpl<T>> objects, int count) {
+        int polled = 0;
+        PooledObjectImpl<T> object;
+        while (polled < count && (object = poll()) != null) {
+            objects.add(object);
+            polled++;
+        }
+        return polled;
+    }
+
+    @Override
+    public boolean take(PooledObjectImpl<T> object) {
+        return claim(object);
+    }
+
+    @Override
+    public void remove(PooledObjectImpl<T> object) {
+        claim(object);
+        lock.lock();
+        try {
+            int slot = object.getSlot();
+            if (slot < 0 || shared.get(slot) != object) return;
+            shared.set(slot, null);
+            object.setSlot(-1);
+            if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+            freeSlots[freeCount++] = slot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean claim(PooledObjectImpl<T> object) {
+        if (object.claim()) {
+            available.decrement();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private PooledObjectImpl<T> pollLocal() {
+        LocalSlots slots = local.get();
+        AtomicReferenceArray<PooledObjectImpl<T>> objects = shared;
+        int slot;
+        while ((slot = slots.pop()) >= 0) {
+            if (slot >= objects.length()) continue;
+            // the slot might hold another object by now, which is as good as the one returned by this thread
+            PooledObjectImpl<T> object = objects.get(slot);
+            if (object != null && claim(object)) return object;
+        }
+        return null;
+    }
+
+    private PooledObjectImpl<T> pollShared() {
+        if (available.sum() <= 0) return null;
+        AtomicReferenceArray<PooledObjectImpl<T>> objects = shared;
+        int length = objects.length();
+        // start from a different position for each thread, to avoid all threads competing for the same objects
+        int start = (int) (Thread.currentThread().getId() % length);
+        for (int i = 0; i < length; i++) {
+            PooledObjectImpl<T> object = objects.get((start + i) % length);
+            if (object != null && claim(object)) return object;
+        }
+        return null;
+    }
+
+    private static <T> AtomicReferenceArray<PooledObjectImpl<T>> grow(AtomicReferenceArray<PooledObjectImpl<T>> objects) {
+        AtomicReferenceArray<PooledObjectImpl<T>> newObjects = new AtomicReferenceArray<>(objects.length() * 2);
+        for (int i = 0; i < objects.length(); i++) {
+            newObjects.set(i, objects.get(i));
+        }
+        return newObjects;
+    }
+
+    /**
+     * The slots of the objects returned last by a thread, most recent first; the oldest slot is forgotten when full.
+     */
+    private static final class LocalSlots {
+
+        private final int[] slots = new int[MAXIMUM_LOCAL_OBJECTS];
+        private int head;
+        private int size;
+
+        void push(int slot) {
+            slots[head] = slot;
+            head = (head + 1) & (MAXIMUM_LOCAL_OBJECTS - 1);
+            if (size < MAXIMUM_LOCAL_OBJECTS) size++;
+        }
+
+        int pop() {
+            if (size == 0) return -1;
+            head = (head - 1) & (MAXIMUM_LOCAL_OBJECTS - 1);
+            size--;
+            return slots[head];
+        }
+    }
+}
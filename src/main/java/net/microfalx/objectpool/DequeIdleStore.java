@@ -0,0 +1,98 @@
+package net.microfalx.objectpool;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An idle store backed by a deque, which serves objects in {@link ObjectPool.Strategy#LIFO LIFO} or
+ * {@link ObjectPool.Strategy#FIFO FIFO} order.
+ * <p>
+ * The deque is an array guarded by a lock, so objects moving in and out of the store do not allocate memory once
+ * the array grew to the size of the pool. Destroyed objects are removed from the deque, and objects which are no
+ * longer idle (destroyed while the removal waited for the lock) are skipped when the store is polled.
+ *
+ * @param <T> the type of pooled objects
+ */
+final class DequeIdleStore<T> implements IdleStore<T> {
+
+    private final Deque<PooledObjectImpl<T>> queue = new ArrayDeque<>();
+    private final Lock lock = new ReentrantLock();
+    private final ObjectPool.Strategy strategy;
+
+    DequeIdleStore(ObjectPool.Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Override
+    public void add(PooledObjectImpl<T> object) {
+        // the deque holds only idle objects
+    }
+
+    @Override
+    public void offer(PooledObjectImpl<T> object) {
+        lock.lock();
+        try {
+            queue.offerLast(object);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public PooledObjectImpl<T> poll() {
+        lock.lock();
+        try {
+            return pollIdle();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int poll(Collection<PooledObjectImpl<T>> objects, int count) {
+        // batches are taken with a single lock acquisition
+        lock.lock();
+        try {
+            int polled = 0;
+            PooledObjectImpl<T> object;
+            while (polled < count && (object = pollIdle()) != null) {
+                objects.add(object);
+                polled++;
+            }
+            return polled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean take(PooledObjectImpl<T> object) {
+        lock.lock();
+        try {
+            return queue.removeFirstOccurrence(object);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(PooledObjectImpl<T> object) {
+        lock.lock();
+        try {
+            queue.removeFirstOccurrence(object);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PooledObjectImpl<T> pollIdle() {
+        PooledObjectImpl<T> object;
+        do {
+            object = strategy == ObjectPool.Strategy.FIFO ? queue.pollFirst() : queue.pollLast();
+        } while (object != null && object.getState() != PooledObject.State.IDLE);
+        return object;
+    }
+}
@@ -0,0 +1,76 @@
+package net.microfalx.objectpool;
+
+import java.util.Collection;
+
+import static net.microfalx.lang.ArgumentUtils.requireNonNull;
+
+/**
+ * Holds the idle objects of a pool and decides which one is borrowed next.
+ *
+ * @param <T> the type of pooled objects
+ */
+interface IdleStore<T> {
+
+    /**
+     * Creates the store which implements a given strategy.
+     *
+     * @param strategy the borrow strategy
+     * @param <T>      the type of pooled objects
+     * @return a non-null instance
+     */
+    static <T> IdleStore<T> create(ObjectPool.Strategy strategy) {
+        requireNonNull(strategy);
+        return switch (strategy) {
+            case LIFO, FIFO -> new DequeIdleStore<>(strategy);
+            case THREAD_AFFINITY -> new ConcurrentBagIdleStore<>();
+        };
+    }
+
+    /**
+     * Adds an object which was just created.
+     * <p>
+     * The object is not idle until it is {@link #offer(PooledObjectImpl) offered}, since new objects are usually
+     * handed directly to a borrower.
+     *
+     * @param object the pooled object
+     */
+    void add(PooledObjectImpl<T> object);
+
+    /**
+     * Adds an object which became idle.
+     *
+     * @param object the pooled object
+     */
+    void offer(PooledObjectImpl<T> object);
+
+    /**
+     * Retrieves an idle object, without waiting.
+     *
+     * @return the pooled object, null if no object is idle
+     */
+    PooledObjectImpl<T> poll();
+
+    /**
+     * Retrieves several idle objects, without waiting.
+     *
+     * @param objects the collection which receives the objects
+     * @param count   the maximum number of objects to retrieve
+     * @return the number of objects retrieved
+     */
+    int poll(Collection<PooledObjectImpl<T>> objects, int count);
+
+    /**
+     * Takes a specific object out of the store, if the object is idle.
+     *
+     * @param object the pooled object
+     * @return {@code true} if the object was idle and it is now owned by the caller, {@code false} otherwise
+     */
+    boolean take(PooledObjectImpl<T> object);
+
+    /**
+     * Removes an object which is about to be destroyed.
+     *
+     * @param object the pooled object
+     */
+    void remove(PooledObjectImpl<T> object);
+}
@@ -0,0 +1,215 @@
+package net.microfalx.objectpool;
+
+import net.microfalx.lang.Descriptable;
+import net.microfalx.lang.Identifiable;
+import net.microfalx.lang.Nameable;
+
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static net.microfalx.lang.ArgumentUtils.requireBounded;
+import static net.microfalx.lang.ArgumentUtils.requireNonNull;
+
+/**
+ * An object pool which holds objects for several keys (tenants, hosts, etc).
+ * <p>
+ * Each key is served by its own pool, created the first time the key is used, with the options of the keyed pool
+ * and the factory of the key. The {@link ObjectPool.Options#getMinimum() minimum} and
+ * {@link ObjectPool.Options#getMaximum() maximum} apply to each key, while {@link #getMaximum()} limits the number
+ * of objects across all keys. When this limit is reached, idle objects of the keys which were not used recently
+ * are destroyed first to make room for the keys in use.
+ * <p>
+ * The pools of the keys are not {@link ObjectPool#getPools() registered}.
+ *
+ * @param <K> the type of keys
+ * @param <T> the type of pooled objects
+ */
+public interface KeyedObjectPool<K, T> extends Identifiable<String>, Nameable, Descriptable {
+
+    /**
+     * Creates a builder used to initialize and create the pool.
+     *
+     * @param factories a function which returns the factory of a key
+     * @param <K>       the type of keys
+     * @param <T>       the type of pooled objects
+     * @return the builder
+     */
+    static <K, T> Builder<K, T> create(Function<? super K, ? extends ObjectFactory<T>> factories) {
+        return new Builder<>(factories);
+    }
+
+    /**
+     * Returns the options used by the pools of the keys.
+     *
+     * @return a non-null instance
+     */
+    ObjectPool.Options<T> getOptions();
+
+    /**
+     * Returns the maximum number of objects across all keys.
+     *
+     * @return a positive integer
+     */
+    int getMaximum();
+
+    /**
+     * Borrows an instance for a key.
+     *
+     * @param key the key
+     * @return a non-null instance
+     */
+    T borrowObject(K key);
+
+    /**
+     * Borrows an instance for a key and wraps it in a lease.
+     *
+     * @param key the key
+     * @return a non-null instance
+     * @see ObjectPool#lease()
+     */
+    ObjectPool.Lease<T> lease(K key);
+
+    /**
+     * Returns an instance borrowed for a key.
+     *
+     * @param key    the key
+     * @param object the object borrowed from the pool
+     */
+    void returnObject(K key, T object);
+
+    /**
+     * Invalidates an object borrowed for a key.
+     *
+     * @param key    the key
+     * @param object the object borrowed from the pool
+     */
+    void invalidateObject(K key, T object);
+
+    /**
+     * Returns the pool which serves a key, creating it if necessary.
+     * <p>
+     * The pool of a key which holds no objects and was not used for {@link ObjectPool.Options#getInactiveTimeout()}
+     * is closed and replaced by a new pool the next time the key is used, so the returned pool should not be kept.
+     *
+     * @param key the key
+     * @return a non-null instance
+     */
+    ObjectPool<T> getPool(K key);
+
+    /**
+     * Returns the keys used with this pool.
+     *
+     * @return a non-null collection
+     */
+    Set<K> getKeys();
+
+    /**
+     * Returns the number of objects across all keys.
+     *
+     * @return a positive integer
+     */
+    int getSize();
+
+    /**
+     * Returns the number of objects of a key.
+     *
+     * @param key the key
+     * @return a positive integer
+     */
+    int getSize(K key);
+
+    /**
+     * Clears the objects sitting idle in the pools of all keys.
+     */
+    void clear();
+
+    /**
+     * Closes the pools of all keys.
+     */
+    void close();
+
+    /**
+     * Returns whether the pool is closed.
+     *
+     * @return <code>true</code> if closed, false otherwise
+     */
+    boolean isClosed();
+
+    /**
+     * A builder for a keyed pool.
+     *
+     * @param <K> the type of keys
+     * @param <T> the type of pooled objects
+     */
+    final class Builder<K, T> {
+
+        private final Function<? super K, ? extends ObjectFactory<T>> factories;
+        private final OptionsImpl<T> options = new OptionsImpl<>();
+        private final ObjectPool.Builder<T> poolBuilder = new ObjectPool.Builder<>(new KeyedObjectPoolImpl.KeyFactory<>(), options);
+        private int maximum = Integer.MAX_VALUE;
+
+        private Builder(Function<? super K, ? extends ObjectFactory<T>> factories) {
+            this.factories = requireNonNull(factories);
+        }
+
+        /**
+         * Changes the pool identifier.
+         *
+         * @param id the pool identifier
+         * @return self
+         */
+        public Builder<K, T> id(String id) {
+            poolBuilder.id(id);
+            return this;
+        }
+
+        /**
+         * Changes the pool name.
+         *
+         * @param name the pool name
+         * @return self
+         */
+        public Builder<K, T> name(String name) {
+            poolBuilder.name(name);
+            return this;
+        }
+
+        /**
+         * Changes the maximum number of objects across all keys.
+         *
+         * @param maximum the maximum number of objects
+         * @return self
+         * @see KeyedObjectPool#getMaximum()
+         */
+        public Builder<K, T> maximum(int maximum) {
+            this.maximum = requireBounded(maximum, 1, Integer.MAX_VALUE);
+            return this;
+        }
+
+        /**
+         * Changes the options of the pools which serve the keys (like the minimum and maximum number of objects
+         * of each key).
+         * <p>
+         * A {@link ObjectPool.Builder#budget(ObjectPool.Budget) budget} cannot be used, the {@link #maximum(int)} of
+         * the keyed pool limits the objects across all keys.
+         *
+         * @param configurer a consumer which changes the options
+         * @return self
+         */
+        public Builder<K, T> options(Consumer<ObjectPool.Builder<T>> configurer) {
+            requireNonNull(configurer);
+            configurer.accept(poolBuilder);
+            return this;
+        }
+
+        /**
+         * Creates, configures and returns a keyed pool.
+         *
+         * @return a non-null instance
+         */
+        public KeyedObjectPool<K, T> build() {
+            return new KeyedObjectPoolImpl<>(options, factories, maximum);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package net.microfalx.objectpool;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static net.microfalx.lang.ArgumentUtils.requireNonNull;
+
+/**
+ * Implementation of {@link KeyedObjectPool}.
+ * <p>
+ * The pools of the keys are kept in a concurrent map, so the pool of a key is found without locks once it was
+ * created. All pools draw their objects from a shared capacity, which reclaims idle objects from the coldest key
+ * when it is exhausted. The keys holding idle objects are kept ordered by the time they were last used, so the coldest
+ * key is found without visiting all keys.
+ * <p>
+ * The pools of the keys do not schedule their own tasks: the keyed pool runs one maintenance, health check and
+ * auto-sizing task which visits the pools of all keys, so the number of scheduled tasks does not grow with the
+ * number of keys. The pools also share one factory executor and one set of metrics, and the pool of a key which
+ * holds no objects and was not used for {@link ObjectPool.Options#getInactiveTimeout()} is closed and forgotten by
+ * the maintenance task.
+ *
+ * @param <K> the type of keys
+ * @param <T> the type of pooled objects
+ */
+final class KeyedObjectPoolImpl<K, T> implements KeyedObjectPool<K, T> {
+
+    private final OptionsImpl<T> options;
+    private final Function<? super K, ? extends ObjectFactory<T>> factories;
+    private final ConcurrentMap<K, ObjectPoolImpl<T>> pools = new ConcurrentHashMap<>();
+    private final KeyCapacity capacity;
+    private final ObjectPoolImpl.Resources resources;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ScheduledFuture<?> maintenanceTask;
+    private final ScheduledFuture<?> healthCheckTask;
+    private final ScheduledFuture<?> autoSizingTask;
+
+    KeyedObjectPoolImpl(OptionsImpl<T> options, Function<? super K, ? extends ObjectFactory<T>> factories, int maximum) {
+        requireNonNull(options);
+        requireNonNull(factories);
+        if (options.getBudget() != null) {
+            throw new ObjectPoolException("A budget cannot be used by a keyed pool, use the maximum of the keyed pool");
+        }
+        this.options = options;
+        this.factories = factories;
+        this.capacity = new KeyCapacity(maximum);
+        this.resources = new ObjectPoolImpl.Resources(options);
+        ScheduledExecutorService executor = options.getExecutor() != null ? options.getExecutor()
+                : ObjectPoolUtils.getDefaultExecutor();
+        long maintenanceInterval = options.getMaintenanceInterval().toMillis();
+        this.maintenanceTask = executor.scheduleWithFixedDelay(this::maintain, maintenanceInterval,
+                maintenanceInterval, TimeUnit.MILLISECONDS);
+        this.healthCheckTask = schedule(executor, options.getHealthCheckInterval().toMillis(),
+                ObjectPoolImpl::checkHealth);
+        this.autoSizingTask = schedule(executor, options.getAutoSizingInterval().toMillis(), ObjectPoolImpl::autoSize);
+    }
+
+    @Override
+    public String getId() {
+        return options.getId();
+    }
+
+    @Override
+    public String getName() {
+        return options.getName();
+    }
+
+    @Override
+    public String getDescription() {
+        return options.getDescription();
+    }
+
+    @Override
+    public ObjectPool.Options<T> getOptions() {
+        return options;
+    }
+
+    @Override
+    public int getMaximum() {
+        return capacity.getMaximum();
+    }
+
+    @Override
+    public T borrowObject(K key) {
+        return borrow(key, ObjectPoolImpl::borrowObject);
+    }
+
+    @Override
+    public ObjectPool.Lease<T> lease(K key) {
+        return borrow(key, ObjectPoolImpl::lease);
+    }
+
+    @Override
+    public void returnObject(K key, T object) {
+        find(key).returnObject(object);
+    }
+
+    @Override
+    public void invalidateObject(K key, T object) {
+        find(key).invalidateObject(object);
+    }
+
+    @Override
+    public ObjectPool<T> getPool(K key) {
+        return findOrCreate(key);
+    }
+
+    private ObjectPoolImpl<T> findOrCreate(K key) {
+        requireNonNull(key);
+        ObjectPoolImpl<T> pool = pools.get(key);
+        if (pool != null) return pool;
+        checkIfOpen();
+        pool = pools.computeIfAbsent(key, this::createPool);
+        // a pool created while the keyed pool was closed is closed as well
+        if (closed.get()) pool.close();
+        return pool;
+    }
+
+    @Override
+    public Set<K> getKeys() {
+        return Collections.unmodifiableSet(pools.keySet());
+    }
+
+    @Override
+    public int getSize() {
+        int size = 0;
+        for (ObjectPoolImpl<T> pool : pools.values()) {
+            size += pool.getSize();
+        }
+        return size;
+    }
+
+    @Override
+    public int getSize(K key) {
+        requireNonNull(key);
+        ObjectPoolImpl<T> pool = pools.get(key);
+        return pool != null ? pool.getSize() : 0;
+    }
+
+    @Override
+    public void clear() {
+        for (ObjectPoolImpl<T> pool : pools.values()) {
+            pool.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            if (maintenanceTask != null) maintenanceTask.cancel(false);
+            if (healthCheckTask != null) healthCheckTask.cancel(false);
+            if (autoSizingTask != null) autoSizingTask.cancel(false);
+            for (ObjectPoolImpl<T> pool : pools.values()) {
+                pool.close();
+            }
+            resources.close();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", KeyedObjectPoolImpl.class.getSimpleName() + "[", "]")
+                .add("name='" + getName() + "'")
+                .add("keys=" + pools.size())
+                .add("size=" + capacity.getUsed())
+                .add("maximum=" + capacity.getMaximum())
+                .toString();
+    }
+
+    private ObjectPoolImpl<T> createPool(K key) {
+        ObjectFactory<T> factory = factories.apply(key);
+        if (factory == null) throw new ObjectPoolException("A factory is not available for key '" + key + "'");
+        return new ObjectPoolImpl<>(options.forKey(key, factory), null, capacity, false, resources);
+    }
+
+    /**
+     * Borrows from the pool of a key, again from a new pool if the pool of the key was evicted in the meantime.
+     *
+     * @param key      the key
+     * @param borrower the function which borrows from the pool
+     * @param <R>      the type of the result
+     * @return the result of the borrower
+     */
+    private <R> R borrow(K key, Function<ObjectPoolImpl<T>, R> borrower) {
+        for (; ; ) {
+            ObjectPoolImpl<T> pool = findOrCreate(key);
+            try {
+                return borrower.apply(pool);
+            } catch (ObjectPoolException e) {
+                if (!pool.isClosed() || closed.get()) throw e;
+                pools.remove(key, pool);
+            }
+        }
+    }
+
+    /**
+     * Runs the maintenance of the pools of all keys and evicts the pools which are no longer used.
+     */
+    private void maintain() {
+        long inactiveTime = System.currentTimeMillis() - options.getInactiveTimeout().toMillis();
+        for (Map.Entry<K, ObjectPoolImpl<T>> entry : pools.entrySet()) {
+            ObjectPoolImpl<T> pool = entry.getValue();
+            if (pool.isClosed()) continue;
+            pool.maintain();
+            if (capacity.getLastUsedTime(pool) < inactiveTime && pool.closeIfUnused()) {
+                pools.remove(entry.getKey(), pool);
+            }
+        }
+    }
+
+    /**
+     * Schedules a task which runs on the pools of all keys.
+     *
+     * @param executor the executor
+     * @param interval the interval between two runs, in milliseconds
+     * @param task     the task to run on each pool
+     * @return the scheduled task, null if the interval is not positive
+     */
+    private ScheduledFuture<?> schedule(ScheduledExecutorService executor, long interval,
+                                        Consumer<ObjectPoolImpl<T>> task) {
+        if (interval <= 0) return null;
+        return executor.scheduleWithFixedDelay(() -> {
+            for (ObjectPoolImpl<T> pool : pools.values()) {
+                if (!pool.isClosed()) task.accept(pool);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private ObjectPoolImpl<T> find(K key) {
+        requireNonNull(key);
+        ObjectPoolImpl<T> pool = pools.get(key);
+        if (pool == null) throw new ObjectPoolException("Key '" + key + "' is not used by pool '" + getName() + "'");
+        return pool;
+    }
+
+    private void checkIfOpen() {
+        if (closed.get()) throw new ObjectPoolException("Object pool is closed");
+    }
+
+    /**
+     * The capacity shared by the pools of all keys.
+     * <p>
+     * The pools which hold idle objects are kept in a set ordered by the time they were last used (an object became
+     * idle), so the coldest pool is the first one. The time of a pool is updated at most once per
+     * {@link #RESOLUTION}, so returning objects does not reorder the set (and allocate memory) each time.
+     */
+    private final class KeyCapacity extends SharedCapacity {
+
+        private static final long RESOLUTION = 1000;
+
+        private final Map<ObjectPoolImpl<?>, Usage> usages = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListSet<Usage> coldest = new ConcurrentSkipListSet<>();
+        private final AtomicLong sequence = new AtomicLong();
+
+        private KeyCapacity(int maximum) {
+            super(maximum);
+        }
+
+        /**
+         * Returns when a pool was used last time.
+         *
+         * @param pool the pool
+         * @return the time, in milliseconds since epoch
+         */
+        long getLastUsedTime(ObjectPoolImpl<?> pool) {
+            Usage usage = usages.get(pool);
+            return usage != null ? usage.time : Long.MAX_VALUE;
+        }
+
+        @Override
+        void attach(ObjectPoolImpl<?> pool) {
+            usages.put(pool, new Usage(pool, sequence.getAndIncrement()));
+        }
+
+        @Override
+        void detach(ObjectPoolImpl<?> pool) {
+            super.detach(pool);
+            Usage usage = usages.remove(pool);
+            if (usage != null) usage.dequeue();
+        }
+
+        @Override
+        void used(ObjectPoolImpl<?> pool) {
+            Usage usage = usages.get(pool);
+            if (usage != null) usage.touch(System.currentTimeMillis());
+        }
+
+        @Override
+        boolean reclaim(ObjectPoolImpl<?> pool) {
+            for (Usage usage : coldest) {
+                ObjectPoolImpl<?> nextPool = usage.pool;
+                if (nextPool == pool) continue;
+                if (nextPool.getSize(PooledObject.State.IDLE) <= nextPool.getOptions().getMinimum()) {
+                    // the pool is queued again when one of its objects becomes idle
+                    usage.dequeue();
+                    if (nextPool.getSize(PooledObject.State.IDLE) > nextPool.getOptions().getMinimum()) {
+                        usage.touch(usage.time);
+                    }
+                    continue;
+                }
+                if (nextPool.evictIdle()) return true;
+            }
+            return false;
+        }
+
+        @Override
+        ObjectPoolImpl<?> findStarving(ObjectPoolImpl<?> excludedPool) {
+            for (ObjectPoolImpl<T> pool : pools.values()) {
+                if (pool != excludedPool && pool.hasWaiters()) return pool;
+            }
+            return null;
+        }
+
+        /**
+         * The position of a pool in the set of pools ordered by their last use.
+         */
+        private final class Usage implements Comparable<Usage> {
+
+            private final ObjectPoolImpl<?> pool;
+            private final long id;
+            private volatile long time = System.currentTimeMillis();
+            private volatile boolean queued;
+
+            private Usage(ObjectPoolImpl<?> pool, long id) {
+                this.pool = pool;
+                this.id = id;
+            }
+
+            /**
+             * Moves the pool at the end of the set, unless it was moved recently.
+             *
+             * @param currentTime the current time
+             */
+            void touch(long currentTime) {
+                if (queued && currentTime - time < RESOLUTION) return;
+                synchronized (this) {
+                    // the time orders the set, so it changes only while the pool is not in the set
+                    if (queued) coldest.remove(this);
+                    time = Math.max(time, currentTime);
+                    queued = coldest.add(this);
+                }
+            }
+
+            /**
+             * Removes the pool from the set.
+             */
+            synchronized void dequeue() {
+                if (queued) coldest.remove(this);
+                queued = false;
+            }
+
+            @Override
+            public int compareTo(Usage usage) {
+                int comparison = Long.compare(time, usage.time);
+                return comparison != 0 ? comparison : Long.compare(id, usage.id);
+            }
+        }
+    }
+
+    /**
+     * The factory of the options shared by all keys, which never creates objects since each key has its own factory.
+     */
+    static final class KeyFactory<T> implements ObjectFactory<T> {
+
+        @Override
+        public T makeObject(ObjectPool<T> pool) {
+            throw new ObjectPoolException("Objects are created by the factory of a key");
+        }
+
+        @Override
+        public void destroyObject(ObjectPool<T> pool, T object) {
+            // never creates objects
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package net.microfalx.objectpool;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.time.Duration.ofNanos;
+import static net.microfalx.lang.ArgumentUtils.requireNonNull;
+
+/**
+ * A histogram of latencies, in nanoseconds, with logarithmic buckets.
+ * <p>
+ * Each power of two is divided in 8 buckets, which keeps the error of percentiles under 12.5%, regardless of
+ * the magnitude of the values. Values are recorded without locks and without allocating memory, while snapshots
+ * copy the buckets.
+ * <p>
+ * The buckets of a recorder are striped: each thread records in the buckets of its stripe, so threads running on
+ * different cores do not write to the same cache lines, and the stripes are added up when the histogram is read.
+ */
+abstract class LatencyHistogram implements ObjectPool.Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final Interval interval = createInterval();
+
+    /**
+     * Creates a histogram which records values.
+     *
+     * @return a non-null instance
+     */
+    static Recorder create() {
+        return new Recorder();
+    }
+
+    /**
+     * Creates a histogram which adds up the values of other histograms.
+     *
+     * @param histograms the histograms
+     * @return a non-null instance
+     */
+    static LatencyHistogram sum(Collection<? extends LatencyHistogram> histograms) {
+        return new Sum(List.copyOf(histograms));
+    }
+
+    /**
+     * Returns the index of the bucket which holds a value.
+     *
+     * @param value the value, in nanoseconds
+     * @return the bucket index
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) Math.max(0, value);
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the highest value which falls in a bucket.
+     *
+     * @param index the bucket index
+     * @return the value, in nanoseconds
+     */
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    @Override
+    public final long getCount() {
+        return getRecordedCount();
+    }
+
+    @Override
+    public final Duration getMean() {
+        long count = getRecordedCount();
+        return count == 0 ? Duration.ZERO : ofNanos(getSum() / count);
+    }
+
+    @Override
+    public final Duration getMaximum() {
+        return ofNanos(getMax());
+    }
+
+    @Override
+    public final Duration getPercentile(double percentile) {
+        return getSnapshot().getPercentile(percentile);
+    }
+
+    @Override
+    public final ObjectPool.Histogram getSnapshot() {
+        return new Snapshot(getCounts(), getSum(), getMax());
+    }
+
+    @Override
+    public final ObjectPool.Histogram getIntervalSnapshot() {
+        return interval.next();
+    }
+
+    /**
+     * Creates an interval which tracks the values recorded since its previous snapshot, independent of
+     * {@link #getIntervalSnapshot()} and other intervals.
+     *
+     * @return a non-null instance
+     */
+    final Interval createInterval() {
+        return new Interval(this);
+    }
+
+    @Override
+    public String toString() {
+        return getSnapshot().toString();
+    }
+
+    /**
+     * Returns a copy of the buckets.
+     *
+     * @return a non-null instance
+     */
+    abstract long[] getCounts();
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return a positive integer
+     */
+    abstract long getRecordedCount();
+
+    /**
+     * Returns the sum of all recorded values.
+     *
+     * @return the sum, in nanoseconds
+     */
+    abstract long getSum();
+
+    /**
+     * Returns the highest recorded value.
+     *
+     * @return the value, in nanoseconds
+     */
+    abstract long getMax();
+
+    /**
+     * Tracks the values recorded in a histogram between two snapshots.
+     */
+    static final class Interval {
+
+        private final LatencyHistogram histogram;
+        private final Lock lock = new ReentrantLock();
+        private long[] counts = new long[BUCKET_COUNT];
+        private long sum;
+
+        private Interval(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        /**
+         * Returns the values recorded since the previous call and starts a new interval.
+         *
+         * @return a non-null instance
+         */
+        ObjectPool.Histogram next() {
+            lock.lock();
+            try {
+                long[] currentCounts = histogram.getCounts();
+                long currentSum = histogram.getSum();
+                long[] deltas = new long[BUCKET_COUNT];
+                long max = 0;
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    deltas[i] = currentCounts[i] - counts[i];
+                    if (deltas[i] > 0) max = highestValueOf(i);
+                }
+                Snapshot snapshot = new Snapshot(deltas, currentSum - sum, Math.min(max, histogram.getMax()));
+                counts = currentCounts;
+                sum = currentSum;
+                return snapshot;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A histogram which records values.
+     * <p>
+     * The stripes are created when a thread first records a value in them, so a histogram used by a few threads
+     * holds only a few stripes. Each stripe holds its buckets followed by the highest value recorded in the stripe.
+     */
+    static final class Recorder extends LatencyHistogram {
+
+        private static final int STRIPE_COUNT = Integer.highestOneBit(
+                Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        private static final int MAX_INDEX = BUCKET_COUNT;
+
+        private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPE_COUNT);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        /**
+         * Records a value.
+         *
+         * @param value the value, in nanoseconds
+         */
+        void record(long value) {
+            if (value < 0) value = 0;
+            AtomicLongArray stripe = getStripe();
+            stripe.getAndIncrement(indexOf(value));
+            count.increment();
+            sum.add(value);
+            // the stripe is written mostly by the current thread, so the loop rarely retries
+            long currentMax;
+            while (value > (currentMax = stripe.get(MAX_INDEX))) {
+                if (stripe.compareAndSet(MAX_INDEX, currentMax, value)) break;
+            }
+        }
+
+        @Override
+        long[] getCounts() {
+            long[] values = new long[BUCKET_COUNT];
+            for (int i = 0; i < STRIPE_COUNT; i++) {
+                AtomicLongArray stripe = stripes.get(i);
+                if (stripe == null) continue;
+                for (int j = 0; j < BUCKET_COUNT; j++) {
+                    values[j] += stripe.get(j);
+                }
+            }
+            return values;
+        }
+
+        @Override
+        long getRecordedCount() {
+            return count.sum();
+        }
+
+        @Override
+        long getSum() {
+            return sum.sum();
+        }
+
+        @Override
+        long getMax() {
+            long max = 0;
+            for (int i = 0; i < STRIPE_COUNT; i++) {
+                AtomicLongArray stripe = stripes.get(i);
+                if (stripe != null) max = Math.max(max, stripe.get(MAX_INDEX));
+            }
+            return max;
+        }
+
+        private AtomicLongArray getStripe() {
+            long id = Thread.currentThread().getId();
+            int index = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (STRIPE_COUNT - 1);
+            AtomicLongArray stripe = stripes.get(index);
+            if (stripe == null) {
+                stripe = new AtomicLongArray(BUCKET_COUNT + 1);
+                if (!stripes.compareAndSet(index, null, stripe)) stripe = stripes.get(index);
+            }
+            return stripe;
+        }
+    }
+
+    /**
+     * A histogram which adds up other histograms.
+     */
+    private static final class Sum extends LatencyHistogram {
+
+        private final List<LatencyHistogram> histograms;
+
+        private Sum(List<LatencyHistogram> histograms) {
+            this.histograms = histograms;
+        }
+
+        @Override
+        long[] getCounts() {
+            long[] values = new long[BUCKET_COUNT];
+            for (LatencyHistogram histogram : histograms) {
+                long[] counts = histogram.getCounts();
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    values[i] += counts[i];
+                }
+            }
+            return values;
+        }
+
+        @Override
+        long getRecordedCount() {
+            long count = 0;
+            for (LatencyHistogram histogram : histograms) {
+                count += histogram.getRecordedCount();
+            }
+            return count;
+        }
+
+        @Override
+        long getSum() {
+            long sum = 0;
+            for (LatencyHistogram histogram : histograms) {
+                sum += histogram.getSum();
+            }
+            return sum;
+        }
+
+        @Override
+        long getMax() {
+            long max = 0;
+            for (LatencyHistogram histogram : histograms) {
+                max = Math.max(max, histogram.getMax());
+            }
+            return max;
+        }
+    }
+
+    /**
+     * An immutable copy of a histogram.
+     */
+    private static final class Snapshot implements ObjectPool.Histogram {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long sum, long max) {
+            requireNonNull(counts);
+            long count = 0;
+            for (long value : counts) {
+                count += value;
+            }
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        @Override
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public Duration getMean() {
+            return count == 0 ? Duration.ZERO : ofNanos(sum / count);
+        }
+
+        @Override
+        public Duration getMaximum() {
+            return ofNanos(max);
+        }
+
+        @Override
+        public Duration getPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100");
+            }
+            if (count == 0) return Duration.ZERO;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                total += counts[i];
+                if (total >= rank) return ofNanos(Math.min(highestValueOf(i), max));
+            }
+            return ofNanos(max);
+        }
+
+        @Override
+        public ObjectPool.Histogram getSnapshot() {
+            return this;
+        }
+
+        @Override
+        public ObjectPool.Histogram getIntervalSnapshot() {
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return new StringJoiner(", ", ObjectPool.Histogram.class.getSimpleName() + "[", "]")
+                    .add("count=" + count)
+                    .add("mean=" + getMean())
+                    .add("p50=" + getP50())
+                    .add("p99=" + getP99())
+                    .add("p999=" + getP999())
+                    .add("maximum=" + getMaximum())
+                    .toString();
+        }
+    }
+}
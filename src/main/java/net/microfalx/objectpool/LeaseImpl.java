@@ -0,0 +1,61 @@
+package net.microfalx.objectpool;
+
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static net.microfalx.lang.ArgumentUtils.requireNonNull;
+
+/**
+ * Implementation of {@link ObjectPool.Lease}.
+ *
+ * @param <T> the type of pooled objects
+ */
+final class LeaseImpl<T> implements ObjectPool.Lease<T> {
+
+    private static final AtomicIntegerFieldUpdater<LeaseImpl> CLOSED =
+            AtomicIntegerFieldUpdater.newUpdater(LeaseImpl.class, "closed");
+
+    private final ObjectPoolImpl<T> pool;
+    private final PooledObjectImpl<T> object;
+    private volatile int closed;
+
+    LeaseImpl(ObjectPoolImpl<T> pool, PooledObjectImpl<T> object) {
+        requireNonNull(pool);
+        requireNonNull(object);
+        this.pool = pool;
+        this.object = object;
+    }
+
+    @Override
+    public T get() {
+        return object.get();
+    }
+
+    @Override
+    public PooledObject<T> getPooledObject() {
+        return object;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed == 1;
+    }
+
+    @Override
+    public void invalidate() {
+        if (CLOSED.compareAndSet(this, 0, 1)) pool.doInvalidate(object);
+    }
+
+    @Override
+    public void close() {
+        if (CLOSED.compareAndSet(this, 0, 1)) pool.doReturn(object);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", LeaseImpl.class.getSimpleName() + "[", "]")
+                .add("object=" + object.getName())
+                .add("closed=" + isClosed())
+                .toString();
+    }
+}
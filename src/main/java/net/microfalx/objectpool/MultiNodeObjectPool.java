@@ -0,0 +1,498 @@
+package net.microfalx.objectpool;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import static net.microfalx.lang.ArgumentUtils.requireBounded;
+import static net.microfalx.lang.ArgumentUtils.requireNonNull;
+
+/**
+ * An object pool which spreads objects across several nodes.
+ * <p>
+ * Each node has its own pool, which creates objects for that node only. Borrows are served by the node selected
+ * with {@link ObjectPool.Options#getNodeSelection()}, while returned objects go back to the pool of their node.
+ * Nodes which are not {@link ObjectPool#isAvailable() available} are skipped while other nodes are available, and
+ * a borrow which fails on a node (the node cannot create objects or the borrow times out) is tried on the next best
+ * node, within the remaining wait time.
+ *
+ * @param <T> the type of pooled objects
+ */
+final class MultiNodeObjectPool<T> implements ObjectPool<T> {
+
+    private static final int DEFAULT_PRIORITY = 0;
+
+    private final Options<T> options;
+    private final ObjectPoolImpl<T>[] pools;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final CompletableFuture<ObjectPool<T>> ready;
+    private final Metrics metrics;
+
+    @SuppressWarnings("unchecked")
+    MultiNodeObjectPool(OptionsImpl<T> options) {
+        requireNonNull(options);
+        this.options = options;
+        this.pools = new ObjectPoolImpl[options.getNodes().size()];
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ObjectPoolImpl<>(options.forNode(i), this);
+        }
+        CompletableFuture<?>[] nodesReady = new CompletableFuture[pools.length];
+        for (int i = 0; i < pools.length; i++) {
+            nodesReady[i] = pools[i].whenReady();
+        }
+        this.ready = CompletableFuture.allOf(nodesReady).thenApply(result -> this);
+        this.metrics = new MetricsImpl();
+        ObjectPoolImpl.register(this);
+    }
+
+    @Override
+    public String getId() {
+        return options.getId();
+    }
+
+    @Override
+    public String getName() {
+        return options.getName();
+    }
+
+    @Override
+    public String getDescription() {
+        return options.getDescription();
+    }
+
+    @Override
+    public Options<T> getOptions() {
+        return options;
+    }
+
+    @Override
+    public void addObject() {
+        checkIfOpen();
+        ObjectPoolImpl<T> pool = pools[0];
+        for (ObjectPoolImpl<T> nextPool : pools) {
+            if (nextPool.getSize() < pool.getSize()) pool = nextPool;
+        }
+        pool.addObject();
+    }
+
+    @Override
+    public T borrowObject() {
+        return borrowObject(options.getMaximumWait(), DEFAULT_PRIORITY);
+    }
+
+    @Override
+    public T borrowObject(Duration timeout) {
+        return borrowObject(timeout, DEFAULT_PRIORITY);
+    }
+
+    @Override
+    public T borrowObject(Duration timeout, int priority) {
+        requireNonNull(timeout);
+        return borrow(timeout, 1, (pool, remaining) -> pool.borrowObject(remaining, priority));
+    }
+
+    @Override
+    public Lease<T> lease() {
+        return borrow(options.getMaximumWait(), 1, (pool, remaining) -> pool.lease(remaining, DEFAULT_PRIORITY));
+    }
+
+    @Override
+    public CompletableFuture<T> borrowObjectAsync() {
+        checkIfOpen();
+        return borrowAsync(select(), new boolean[pools.length]);
+    }
+
+    @Override
+    public List<T> borrowObjects(int count, Duration wait) {
+        requireBounded(count, 1, options.getMaximum());
+        requireNonNull(wait);
+        // a batch is served by a single node
+        return borrow(wait, count, (pool, remaining) -> pool.borrowObjects(count, remaining));
+    }
+
+    @Override
+    public void returnObject(T object) {
+        requireNonNull(object);
+        for (ObjectPoolImpl<T> pool : pools) {
+            PooledObjectImpl<T> pooledObject = pool.lookup(object);
+            if (pooledObject != null) {
+                pool.doReturn(pooledObject);
+                return;
+            }
+        }
+        throw new ObjectPoolException("Returned object (" + object + ") was not created by this pool");
+    }
+
+    @Override
+    public void returnObjects(Collection<T> objects) {
+        requireNonNull(objects);
+        List<List<T>> objectsByNode = new ArrayList<>(pools.length);
+        for (int i = 0; i < pools.length; i++) {
+            objectsByNode.add(new ArrayList<>());
+        }
+        for (T object : objects) {
+            objectsByNode.get(indexOf(requireNonNull(object))).add(object);
+        }
+        for (int i = 0; i < pools.length; i++) {
+            if (!objectsByNode.get(i).isEmpty()) pools[i].returnObjects(objectsByNode.get(i));
+        }
+    }
+
+    @Override
+    public void invalidateObject(T object) {
+        requireNonNull(object);
+        pools[indexOf(object)].invalidateObject(object);
+    }
+
+    @Override
+    public void clear() {
+        for (ObjectPoolImpl<T> pool : pools) {
+            pool.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            ObjectPoolImpl.unregister(this);
+            for (ObjectPoolImpl<T> pool : pools) {
+                pool.close();
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<ObjectPool<T>> whenReady() {
+        return ready;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        for (ObjectPoolImpl<T> pool : pools) {
+            if (pool.isAvailable()) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    @Override
+    public int getSize(PooledObject.State state) {
+        int size = 0;
+        for (ObjectPoolImpl<T> pool : pools) {
+            size += pool.getSize(state);
+        }
+        return size;
+    }
+
+    @Override
+    public int getSize() {
+        int size = 0;
+        for (ObjectPoolImpl<T> pool : pools) {
+            size += pool.getSize();
+        }
+        return size;
+    }
+
+    @Override
+    public Collection<PooledObject<T>> getObjects() {
+        Collection<PooledObject<T>> objects = new ArrayList<>();
+        for (ObjectPoolImpl<T> pool : pools) {
+            objects.addAll(pool.getObjects());
+        }
+        return Collections.unmodifiableCollection(objects);
+    }
+
+    @Override
+    public Collection<PooledObject<T>> getObjects(PooledObject.State state) {
+        Collection<PooledObject<T>> objects = new ArrayList<>();
+        for (ObjectPoolImpl<T> pool : pools) {
+            objects.addAll(pool.getObjects(state));
+        }
+        return objects;
+    }
+
+    @Override
+    public void forEachObject(PooledObject.State state, Consumer<? super PooledObject<T>> action) {
+        for (ObjectPoolImpl<T> pool : pools) {
+            pool.forEachObject(state, action);
+        }
+    }
+
+    @Override
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the pools of the nodes.
+     *
+     * @return a non-null instance
+     */
+    List<ObjectPool<T>> getNodePools() {
+        return List.of(pools);
+    }
+
+    private void checkIfOpen() {
+        if (closed.get()) throw new ObjectPoolException("Object pool is closed");
+    }
+
+    /**
+     * Borrows from the selected node and, if the borrow fails, from the next best node which was not tried yet.
+     *
+     * @param timeout  the maximum amount of time to wait, across all nodes
+     * @param count    the number of objects borrowed at once
+     * @param borrower a function which borrows from a node, given the remaining time
+     * @param <R>      the type of the result
+     * @return the result of the borrow
+     */
+    private <R> R borrow(Duration timeout, int count, BiFunction<ObjectPoolImpl<T>, Duration, R> borrower) {
+        checkIfOpen();
+        long endTime = System.nanoTime() + timeout.toNanos();
+        ObjectPoolImpl<T> pool = count == 1 ? select() : selectNext(null, count);
+        if (pool == null) {
+            throw new ObjectPoolException("A batch of " + count + " objects cannot be served by a single node of pool '"
+                    + getName() + "'");
+        }
+        boolean[] tried = null;
+        for (; ; ) {
+            try {
+                return borrower.apply(pool, Duration.ofNanos(Math.max(0, endTime - System.nanoTime())));
+            } catch (RuntimeException e) {
+                if (isClosed() || Thread.currentThread().isInterrupted()) throw e;
+                if (tried == null) tried = new boolean[pools.length];
+                tried[indexOf(pool)] = true;
+                pool = selectNext(tried, count);
+                if (pool == null) throw e;
+            }
+        }
+    }
+
+    private CompletableFuture<T> borrowAsync(ObjectPoolImpl<T> pool, boolean[] tried) {
+        return pool.borrowObjectAsync().exceptionallyCompose(throwable -> {
+            tried[indexOf(pool)] = true;
+            ObjectPoolImpl<T> nextPool = isClosed() ? null : selectNext(tried, 1);
+            return nextPool != null ? borrowAsync(nextPool, tried) : CompletableFuture.failedFuture(throwable);
+        });
+    }
+
+    /**
+     * Selects the pool of the node which serves the next borrow.
+     *
+     * @return a non-null instance
+     */
+    private ObjectPoolImpl<T> select() {
+        if (options.getNodeSelection() == NodeSelection.LEAST_ACTIVE) {
+            return selectNext(null, 1);
+        } else {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(pools.length);
+            int second = random.nextInt(pools.length - 1);
+            if (second >= first) second++;
+            ObjectPoolImpl<T> firstPool = pools[first];
+            ObjectPoolImpl<T> secondPool = pools[second];
+            if (firstPool.isAvailable() != secondPool.isAvailable()) {
+                return firstPool.isAvailable() ? firstPool : secondPool;
+            } else if (!firstPool.isAvailable()) {
+                // both choices are down, another node might be available
+                return selectNext(null, 1);
+            } else {
+                return getLoad(secondPool) < getLoad(firstPool) ? secondPool : firstPool;
+            }
+        }
+    }
+
+    /**
+     * Selects the least loaded pool, preferring the nodes which are available.
+     *
+     * @param tried the nodes already tried, null if none was tried
+     * @param count the number of objects borrowed at once
+     * @return the pool, null if all nodes were tried (or none can serve the objects)
+     */
+    private ObjectPoolImpl<T> selectNext(boolean[] tried, int count) {
+        ObjectPoolImpl<T> pool = null;
+        boolean available = false;
+        float load = 0;
+        for (int i = 0; i < pools.length; i++) {
+            ObjectPoolImpl<T> nextPool = pools[i];
+            if (tried != null && tried[i] || nextPool.getOptions().getMaximum() < count) continue;
+            boolean nextAvailable = nextPool.isAvailable();
+            float nextLoad = getLoad(nextPool);
+            if (pool == null || nextAvailable && !available || nextAvailable == available && nextLoad < load) {
+                pool = nextPool;
+                available = nextAvailable;
+                load = nextLoad;
+            }
+        }
+        return pool;
+    }
+
+    private float getLoad(ObjectPoolImpl<T> pool) {
+        return (float) pool.getSize(PooledObject.State.ACTIVE) / pool.getOptions().getMaximum();
+    }
+
+    private int indexOf(ObjectPoolImpl<T> pool) {
+        for (int i = 0; i < pools.length; i++) {
+            if (pools[i] == pool) return i;
+        }
+        throw new IllegalArgumentException("Pool '" + pool.getName() + "' is not a node of pool '" + getName() + "'");
+    }
+
+    private int indexOf(T object) {
+        for (int i = 0; i < pools.length; i++) {
+            if (pools[i].lookup(object) != null) return i;
+        }
+        throw new ObjectPoolException("Returned object (" + object + ") was not created by this pool");
+    }
+
+    private long sum(ToLongFunction<Metrics> function) {
+        long value = 0;
+        for (ObjectPoolImpl<T> pool : pools) {
+            value += function.applyAsLong(pool.getMetrics());
+        }
+        return value;
+    }
+
+    private Histogram sumHistograms(Function<ObjectPoolMetricsImpl, LatencyHistogram> function) {
+        List<LatencyHistogram> histograms = new ArrayList<>(pools.length);
+        for (ObjectPoolImpl<T> pool : pools) {
+            histograms.add(function.apply((ObjectPoolMetricsImpl) pool.getMetrics()));
+        }
+        return LatencyHistogram.sum(histograms);
+    }
+
+    /**
+     * Metrics which add up the metrics of all nodes.
+     */
+    private class MetricsImpl implements Metrics {
+
+        private final long created = System.currentTimeMillis();
+        private final Histogram borrowWaitHistogram = sumHistograms(ObjectPoolMetricsImpl::getBorrowWaitHistogram);
+        private final Histogram holdTimeHistogram = sumHistograms(ObjectPoolMetricsImpl::getHoldTimeHistogram);
+        private final Histogram creationHistogram = sumHistograms(ObjectPoolMetricsImpl::getCreationHistogram);
+        private final Histogram activationHistogram = sumHistograms(ObjectPoolMetricsImpl::getActivationHistogram);
+        private final Histogram deactivationHistogram = sumHistograms(ObjectPoolMetricsImpl::getDeactivationHistogram);
+
+        @Override
+        public ZonedDateTime getCreatedTime() {
+            return ObjectPoolUtils.fromInstant(created);
+        }
+
+        @Override
+        public long getBorrowedCount() {
+            return sum(Metrics::getBorrowedCount);
+        }
+
+        @Override
+        public Duration getBorrowedDuration() {
+            return Duration.ofNanos(sum(metrics -> metrics.getBorrowedDuration().toNanos()));
+        }
+
+        @Override
+        public long getReleasedCount() {
+            return sum(Metrics::getReleasedCount);
+        }
+
+        @Override
+        public Duration getReleasedDuration() {
+            return Duration.ofNanos(sum(metrics -> metrics.getReleasedDuration().toNanos()));
+        }
+
+        @Override
+        public long getCreatedCount() {
+            return sum(Metrics::getCreatedCount);
+        }
+
+        @Override
+        public long getCreationFailureCount() {
+            return sum(Metrics::getCreationFailureCount);
+        }
+
+        @Override
+        public long getAbandonedCount() {
+            return sum(Metrics::getAbandonedCount);
+        }
+
+        @Override
+        public long getValidationFailureCount() {
+            return sum(Metrics::getValidationFailureCount);
+        }
+
+        @Override
+        public long getRetiredCount() {
+            return sum(Metrics::getRetiredCount);
+        }
+
+        @Override
+        public Histogram getBorrowWaitHistogram() {
+            return borrowWaitHistogram;
+        }
+
+        @Override
+        public Histogram getHoldTimeHistogram() {
+            return holdTimeHistogram;
+        }
+
+        @Override
+        public Histogram getCreationHistogram() {
+            return creationHistogram;
+        }
+
+        @Override
+        public Histogram getActivationHistogram() {
+            return activationHistogram;
+        }
+
+        @Override
+        public Histogram getDeactivationHistogram() {
+            return deactivationHistogram;
+        }
+
+        @Override
+        public int getTargetSize() {
+            return (int) sum(Metrics::getTargetSize);
+        }
+
+        @Override
+        public float getArrivalRate() {
+            float arrivalRate = 0;
+            for (ObjectPoolImpl<T> pool : pools) {
+                arrivalRate += pool.getMetrics().getArrivalRate();
+            }
+            return arrivalRate;
+        }
+
+        @Override
+        public float getDemand() {
+            float demand = 0;
+            for (ObjectPoolImpl<T> pool : pools) {
+                demand += pool.getMetrics().getDemand();
+            }
+            return demand;
+        }
+
+        @Override
+        public long getResizeCount() {
+            return sum(Metrics::getResizeCount);
+        }
+
+        @Override
+        public float getWarmUpProgress() {
+            float progress = 0;
+            for (ObjectPoolImpl<T> pool : pools) {
+                progress += pool.getMetrics().getWarmUpProgress();
+            }
+            return progress / pools.length;
+        }
+    }
+}
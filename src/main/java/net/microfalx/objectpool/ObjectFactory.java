@@ -15,6 +15,20 @@ public interface ObjectFactory<T> {
      */
     T makeObject(ObjectPool<T> pool) throws Exception;
 
+    /**
+     * Creates an instance which gives access to the service on a given node.
+     * <p>
+     * The pool calls this method for pools with {@link ObjectPool.Options#getNodes() nodes}. The default
+     * implementation ignores the node.
+     *
+     * @param pool the pool which requested the object
+     * @param node the node which has to serve the object, null if the pool has no nodes
+     * @return a newly created object.
+     */
+    default T makeObject(ObjectPool<T> pool, ObjectPool.Node node) throws Exception {
+        return makeObject(pool);
+    }
+
     /**
      * Destroys an instance no longer needed by the pool.
      *
@@ -9,7 +9,9 @@ import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
 
 import static net.microfalx.lang.ArgumentUtils.requireBounded;
 import static net.microfalx.lang.ArgumentUtils.requireNonNull;
@@ -40,6 +42,17 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
         return ObjectPoolImpl.getPools();
     }
 
+    /**
+     * Creates a budget, which limits the number of objects of all pools drawing from it.
+     *
+     * @param capacity the maximum number of objects across pools
+     * @return a non-null instance
+     * @see Builder#budget(Budget)
+     */
+    static Budget createBudget(int capacity) {
+        return new BudgetImpl(capacity);
+    }
+
     /**
      * Returns the configuration options of this pool.
      *
@@ -57,6 +70,67 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
      */
     T borrowObject();
 
+    /**
+     * Borrows an instance from this pool, waiting at most the given amount of time.
+     * <p>
+     * Borrowers waiting for objects are served earliest deadline first, so a borrow with a short timeout does not
+     * wait behind borrows which can wait longer.
+     *
+     * @param timeout the maximum amount of time to wait for an object
+     * @return a non-null instance
+     * @see Options#getMaximumWait()
+     */
+    T borrowObject(Duration timeout);
+
+    /**
+     * Borrows an instance from this pool, waiting at most the given amount of time.
+     * <p>
+     * Borrowers with a higher priority are served first, while borrowers with the same priority are served
+     * earliest deadline first. The priority of {@link #borrowObject()} is 0.
+     *
+     * @param timeout  the maximum amount of time to wait for an object
+     * @param priority the priority of the borrow
+     * @return a non-null instance
+     */
+    T borrowObject(Duration timeout, int priority);
+
+    /**
+     * Borrows an instance from this pool and wraps it in a lease.
+     * <p>
+     * The lease is meant to be used with a <code>try-with-resources</code> statement, which returns the object
+     * to the pool, even when an exception is thrown.
+     *
+     * @return a non-null instance
+     */
+    Lease<T> lease();
+
+    /**
+     * Borrows an instance from this pool, without blocking the calling thread.
+     * <p>
+     * The future completes when an idle object is available, a new object was created or an object was returned
+     * to the pool. Objects are created on threads owned by the pool (or on {@link Options#isVirtualThreads() virtual threads}),
+     * and an object returned to the pool is handed over on the thread which returned it.
+     * <p>
+     * The future completes exceptionally if no object becomes available within {@link Options#getMaximumWait()}.
+     * Cancelling the future stops the wait, and an object which arrives later goes back to the pool.
+     *
+     * @return a non-null instance
+     */
+    CompletableFuture<T> borrowObjectAsync();
+
+    /**
+     * Borrows several instances from this pool, all or nothing.
+     * <p>
+     * Batches are served one at a time, so two batch borrowers never hold part of the objects the other one needs.
+     * The objects are activated together, once all of them were acquired.
+     *
+     * @param count the number of objects, between 1 and {@link Options#getMaximum()}
+     * @param wait  the maximum amount of time to wait for the objects
+     * @return a non-null list with the borrowed objects
+     * @see ActivableObjectFactory#activateObjects(ObjectPool, Collection)
+     */
+    List<T> borrowObjects(int count, Duration wait);
+
     /**
      * Returns an instance to the pool.
      *
@@ -65,6 +139,17 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
      */
     void returnObject(T object);
 
+    /**
+     * Returns several instances to the pool.
+     * <p>
+     * The objects are deactivated together, before they become idle.
+     *
+     * @param objects the objects borrowed from the pool
+     * @see #borrowObjects(int, Duration)
+     * @see ActivableObjectFactory#deactivateObjects(ObjectPool, Collection)
+     */
+    void returnObjects(Collection<T> objects);
+
     /**
      * Invalidates an object from the pool.
      * <p>
@@ -88,8 +173,22 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
      */
     void close();
 
+    /**
+     * Returns a future which completes when the pool finished to warm up.
+     * <p>
+     * The future completes (successfully) once all objects requested by {@link Options#getWarmUpCount()} were
+     * created or failed to be created. Failures are reported by {@link Metrics#getCreationFailureCount()}.
+     *
+     * @return a non-null instance
+     */
+    CompletableFuture<ObjectPool<T>> whenReady();
+
     /**
      * Returns whether the pool is available (can create objects).
+     * <p>
+     * The availability is updated in the background, by a probe which runs every
+     * {@link Options#getHealthCheckInterval() health check interval}, and by the outcome of object creations, so this
+     * method returns immediately. Without a health check, the pool is always available.
      *
      * @return {@code true} if the pool is available, {@code false} otherwise
      */
@@ -126,12 +225,22 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
 
     /**
      * Returns the pooled objects in a given state.
+     * <p>
+     * The collection is a live view, the objects are filtered while the collection is iterated.
      *
      * @param state the state of pooled objects
      * @return a non-null collection
      */
     Collection<PooledObject<T>> getObjects(PooledObject.State state);
 
+    /**
+     * Visits the pooled objects in a given state, without copying them.
+     *
+     * @param state  the state of pooled objects
+     * @param action the action called for each object
+     */
+    void forEachObject(PooledObject.State state, Consumer<? super PooledObject<T>> action);
+
     /**
      * Returns metrics about this pool.
      *
@@ -152,7 +261,34 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
         /**
          * First object added to the pool is borrowed first.
          */
-        FIFO
+        FIFO,
+
+        /**
+         * Last object returned by a thread is borrowed first by the same thread.
+         * <p>
+         * Idle objects are shared between threads without locks, which allows borrow and return to scale with the
+         * number of threads.
+         */
+        THREAD_AFFINITY
+    }
+
+    /**
+     * A strategy used to select the node which serves a borrow, for pools with several nodes.
+     */
+    enum NodeSelection {
+
+        /**
+         * The node with the lowest fraction of borrowed objects serves the borrow.
+         */
+        LEAST_ACTIVE,
+
+        /**
+         * Two nodes are picked randomly and the one with the lowest fraction of borrowed objects serves the borrow.
+         * <p>
+         * The random choice spreads borrows across nodes with similar load, while a slow node, which keeps
+         * its objects borrowed for longer, receives fewer borrows.
+         */
+        POWER_OF_TWO_CHOICES
     }
 
     /**
@@ -194,6 +330,290 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
          * @return the duration
          */
         Duration getReleasedDuration();
+
+        /**
+         * Returns the number of objects created by the pool.
+         *
+         * @return a positive integer
+         */
+        long getCreatedCount();
+
+        /**
+         * Returns the number of times the factory failed to create an object.
+         *
+         * @return a positive integer
+         */
+        long getCreationFailureCount();
+
+        /**
+         * Returns the number of borrowed objects which were destroyed because they were abandoned.
+         *
+         * @return a positive integer
+         * @see Options#getAbandonedTimeout()
+         */
+        long getAbandonedCount();
+
+        /**
+         * Returns the number of objects which failed validation and were destroyed.
+         *
+         * @return a positive integer
+         * @see ObjectFactory#validateObject(ObjectPool, Object)
+         */
+        long getValidationFailureCount();
+
+        /**
+         * Returns the number of objects retired because they exceeded their reuse or time-to-live limits.
+         *
+         * @return a positive integer
+         * @see Options#getMaximumReuseCount()
+         * @see Options#getMaximumReuseTime()
+         * @see Options#getTimeToLiveTimeout()
+         */
+        long getRetiredCount();
+
+        /**
+         * Returns how much of the warm-up was completed.
+         *
+         * @return a value between 0 and 1, 1 if the pool does not need to warm up
+         * @see Options#getWarmUpCount()
+         */
+        float getWarmUpProgress();
+
+        /**
+         * Returns the distribution of the time borrowers waited for an object.
+         *
+         * @return a non-null instance
+         */
+        Histogram getBorrowWaitHistogram();
+
+        /**
+         * Returns the distribution of the time objects were held by borrowers (from borrow to return).
+         *
+         * @return a non-null instance
+         */
+        Histogram getHoldTimeHistogram();
+
+        /**
+         * Returns the distribution of the time spent by the factory to create objects.
+         *
+         * @return a non-null instance
+         * @see ObjectFactory#makeObject(ObjectPool)
+         */
+        Histogram getCreationHistogram();
+
+        /**
+         * Returns the distribution of the time spent by the factory to activate objects.
+         *
+         * @return a non-null instance
+         * @see ActivableObjectFactory#activateObject(ObjectPool, PooledObject)
+         */
+        Histogram getActivationHistogram();
+
+        /**
+         * Returns the distribution of the time spent by the factory to deactivate objects.
+         *
+         * @return a non-null instance
+         * @see ActivableObjectFactory#deactivateObject(ObjectPool, PooledObject)
+         */
+        Histogram getDeactivationHistogram();
+
+        /**
+         * Returns the number of objects the pool aims to hold, as decided by the last auto-sizing run.
+         *
+         * @return a positive integer, the maximum if auto-sizing is disabled
+         * @see Options#getAutoSizingInterval()
+         */
+        int getTargetSize();
+
+        /**
+         * Returns the number of borrows per second, measured by the last auto-sizing run.
+         *
+         * @return a positive number
+         * @see Options#getAutoSizingInterval()
+         */
+        float getArrivalRate();
+
+        /**
+         * Returns the number of objects needed by borrowers, estimated by the last auto-sizing run.
+         * <p>
+         * The demand is the arrival rate multiplied by the average hold time (Little's law).
+         *
+         * @return a positive number
+         * @see Options#getAutoSizingInterval()
+         */
+        float getDemand();
+
+        /**
+         * Returns the number of times auto-sizing changed the target size.
+         *
+         * @return a positive integer
+         * @see Options#getAutoSizingInterval()
+         */
+        long getResizeCount();
+    }
+
+    /**
+     * A distribution of durations, which provides percentiles.
+     * <p>
+     * Percentiles are approximated, with an error under 12.5%.
+     */
+    interface Histogram {
+
+        /**
+         * Returns the number of recorded durations.
+         *
+         * @return a positive integer
+         */
+        long getCount();
+
+        /**
+         * Returns the average of the recorded durations.
+         *
+         * @return a non-null instance, zero if nothing was recorded
+         */
+        Duration getMean();
+
+        /**
+         * Returns the longest recorded duration.
+         *
+         * @return a non-null instance, zero if nothing was recorded
+         */
+        Duration getMaximum();
+
+        /**
+         * Returns the duration under which a given percentage of the recorded durations fall.
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @return a non-null instance, zero if nothing was recorded
+         */
+        Duration getPercentile(double percentile);
+
+        /**
+         * Returns the median.
+         *
+         * @return a non-null instance
+         */
+        default Duration getP50() {
+            return getPercentile(50);
+        }
+
+        /**
+         * Returns the 99th percentile.
+         *
+         * @return a non-null instance
+         */
+        default Duration getP99() {
+            return getPercentile(99);
+        }
+
+        /**
+         * Returns the 99.9th percentile.
+         *
+         * @return a non-null instance
+         */
+        default Duration getP999() {
+            return getPercentile(99.9);
+        }
+
+        /**
+         * Returns a copy of the durations recorded so far.
+         * <p>
+         * A snapshot is not updated anymore, and it returns itself.
+         *
+         * @return a non-null instance
+         */
+        Histogram getSnapshot();
+
+        /**
+         * Returns a copy of the durations recorded since the previous interval snapshot and starts a new interval.
+         * <p>
+         * Interval snapshots allow percentiles to be reported periodically, without the history of the pool.
+         * A snapshot returns itself.
+         *
+         * @return a non-null instance
+         */
+        Histogram getIntervalSnapshot();
+    }
+
+    /**
+     * A borrowed object which is returned to the pool when the lease is closed.
+     * <p>
+     * The lease holds the pooled object, so it is returned (or invalidated) without looking it up. Only the first
+     * call to {@link #close()} or {@link #invalidate()} has an effect, further calls are ignored.
+     *
+     * @param <T> the type of pooled objects
+     */
+    interface Lease<T> extends AutoCloseable {
+
+        /**
+         * Returns the borrowed object.
+         *
+         * @return a non-null instance
+         */
+        T get();
+
+        /**
+         * Returns information about the borrowed object.
+         *
+         * @return a non-null instance
+         */
+        PooledObject<T> getPooledObject();
+
+        /**
+         * Returns whether the lease was closed (or invalidated).
+         *
+         * @return {@code true} if closed, {@code false} otherwise
+         */
+        boolean isClosed();
+
+        /**
+         * Invalidates the borrowed object and closes the lease.
+         *
+         * @see ObjectPool#invalidateObject(Object)
+         */
+        void invalidate();
+
+        /**
+         * Returns the borrowed object to the pool.
+         *
+         * @see ObjectPool#returnObject(Object)
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * A number of objects shared by several pools (like the total number of connections accepted by a backend).
+     * <p>
+     * Each pool keeps its own limits, but it also needs capacity from the budget to create an object. When the budget
+     * is exhausted, idle objects are destroyed in the pools whose borrowers waited the least recently and the capacity
+     * is given to the pools whose borrowers wait.
+     * <p>
+     * Budgets are created with {@link ObjectPool#createBudget(int)}.
+     */
+    sealed interface Budget permits BudgetImpl {
+
+        /**
+         * Returns the maximum number of objects across all pools.
+         *
+         * @return a positive integer
+         */
+        int getCapacity();
+
+        /**
+         * Returns the number of objects held by all pools.
+         *
+         * @return a positive integer
+         */
+        int getSize();
+
+        /**
+         * Returns a snapshot with the number of objects held by each {@link ObjectPool#getPools() registered} pool
+         * which draws from this budget.
+         *
+         * @return a non-null instance
+         */
+        Map<ObjectPool<?>, Integer> getUsage();
     }
 
     /**
@@ -234,12 +654,21 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
         /**
          * Returns a list of nodes supporting the object pool.
          * <p>
-         * A pool without nodes does not mean it cannot create objects.
+         * A pool without nodes does not mean it cannot create objects. A pool with several nodes keeps a pool for each
+         * node, which share the {@link #getMinimum() minimum} and {@link #getMaximum() maximum} number of objects
+         * and the warm-up. Objects are created with {@link ObjectFactory#makeObject(ObjectPool, Node)}.
          *
          * @return a non-null instance
          */
         List<Node> getNodes();
 
+        /**
+         * Returns how the node which serves a borrow is selected, for pools with several nodes.
+         *
+         * @return a non-null enum
+         */
+        NodeSelection getNodeSelection();
+
         /**
          * Returns the minimum number of objects preserved in the pool.
          * <p>
@@ -275,10 +704,15 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
          * The abandoned timeout enables borrowed object to be reclaimed back into the  pool after an object
          * has not been used for a specific amount of time.
          * <p>
-         * Abandonment is determined by monitoring calls to the objects. Objects must implement {@link  UsageReporter} to
-         * be able to apply this timeout.
+         * Abandonment is determined by monitoring calls to the objects, if objects implement {@link  UsageReporter}.
+         * Otherwise, the object is considered abandoned if it was not returned within this timeout.
+         * <p>
+         * Abandoned objects are destroyed by the maintenance task and their capacity is released.
+         * <p>
+         * Abandonment detection is disabled by default ({@link Duration#ZERO}), since destroying an object which is
+         * still borrowed breaks callers which hold objects for a long time on purpose.
          *
-         * @return a positive duration
+         * @return a positive duration, {@link Duration#ZERO} if borrowed objects are never reclaimed
          */
         Duration getAbandonedTimeout();
 
@@ -296,7 +730,8 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
          * Returns the connection timeout.
          * <p>
          * The connection timeout specifies how long the pool will wait for an object to be create if the factory
-         * connects to an external service.
+         * connects to an external service. It also bounds how long a creation waits for its turn when
+         * {@link #getCreationConcurrency()} objects are already being created.
          *
          * @return a positive duration
          */
@@ -314,19 +749,178 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
          * <p>
          * This timeout allows for object recycling based on time. Sometimes objects hold/accumulate resources
          * in various services and limiting the amount of time they are kept alive helps with resource management.
+         * <p>
+         * Each object is retired a little earlier than this timeout (up to 10%), so objects created together do not
+         * expire at the same time. Idle objects are replaced before they are retired.
+         * <p>
+         * Retirement by time is disabled by default ({@link Duration#ZERO}).
          *
-         * @return a positive duration
+         * @return a positive duration, {@link Duration#ZERO} if objects are not retired based on time
          */
         Duration getMaximumReuseTime();
 
         /**
          * Returns the maximum number of borrow operations are allowed for a pooled object.
+         * <p>
+         * Like {@link #getMaximumReuseTime()}, the limit is lowered randomly for each object (up to 10%).
          *
          * @return a positiver integer
          * @see #getMaximumReuseTime()
          */
         int getMaximumReuseCount();
 
+        /**
+         * Returns the maximum number of objects which can be created in parallel.
+         * <p>
+         * Objects are created without holding any pool lock, which allows factories with slow object creation
+         * (like opening a network connection) to create several objects at the same time. This limit protects
+         * the remote service against a burst of creation requests. It also bounds the number of threads which create
+         * objects in the background.
+         * <p>
+         * The default is {@link ObjectPoolUtils#DEFAULT_CREATION_CONCURRENCY}.
+         *
+         * @return a positive integer
+         */
+        int getCreationConcurrency();
+
+        /**
+         * Returns the interval between two runs of the maintenance task.
+         * <p>
+         * The maintenance task runs on the {@link #getExecutor() executor} and makes sure the pool keeps
+         * the {@link #getMinimum() minimum} number of idle objects.
+         *
+         * @return a positive duration
+         */
+        Duration getMaintenanceInterval();
+
+        /**
+         * Returns the interval between two runs of the health check.
+         * <p>
+         * The health check runs on the {@link #getExecutor() executor}, validates an idle object (if any) and updates
+         * the {@link ObjectPool#isAvailable() availability} of the pool, which also follows the outcome of object
+         * creations.
+         * <p>
+         * The health check is disabled by default ({@link Duration#ZERO}), and the pool is always available. For
+         * {@link KeyedObjectPool keyed pools}, one task checks all the pools, one key after another.
+         *
+         * @return a positive duration, {@link Duration#ZERO} if the health check is disabled
+         */
+        Duration getHealthCheckInterval();
+
+        /**
+         * Returns the number of consecutive health check failures after which the pool is not available.
+         *
+         * @return a positive integer
+         */
+        int getHealthCheckFailureThreshold();
+
+        /**
+         * Returns the interval between two runs of auto-sizing.
+         * <p>
+         * Auto-sizing runs on the {@link #getExecutor() executor} and adjusts the number of objects the pool aims to
+         * hold, between the {@link #getMinimum() minimum} and the {@link #getMaximum() maximum}, from the rate of
+         * borrows and the time objects are held. The pool grows quickly when borrowers wait and shrinks slowly when
+         * objects sit idle. A zero interval (the default) disables auto-sizing and the pool grows up to the maximum.
+         *
+         * @return a positive duration
+         * @see Metrics#getTargetSize()
+         */
+        Duration getAutoSizingInterval();
+
+        /**
+         * Returns the budget which limits the number of objects of this pool together with other pools.
+         *
+         * @return the budget, null if the pool is limited only by its {@link #getMaximum() maximum}
+         */
+        Budget getBudget();
+
+        /**
+         * Returns the number of objects created (in parallel) when the pool is created.
+         *
+         * @return a positive integer
+         * @see ObjectPool#whenReady()
+         */
+        int getWarmUpCount();
+
+        /**
+         * Returns how long {@link Builder#build()} waits for the pool to warm up.
+         * <p>
+         * A zero duration returns the pool immediately, while the objects are created in the background.
+         *
+         * @return a positive duration
+         */
+        Duration getWarmUpTimeout();
+
+        /**
+         * Returns whether objects are validated before they are borrowed.
+         * <p>
+         * Objects validated within the {@link #getValidationInterval() validation interval} are not validated again,
+         * and only a {@link #getValidationSamplingRate() sample} of borrows validates objects.
+         *
+         * @return {@code true} to validate objects on borrow, {@code false} otherwise
+         * @see ObjectFactory#validateObject(ObjectPool, Object)
+         */
+        boolean isTestOnBorrow();
+
+        /**
+         * Returns whether objects are validated when they are returned to the pool.
+         *
+         * @return {@code true} to validate objects on return, {@code false} otherwise
+         * @see ObjectFactory#validateObject(ObjectPool, Object)
+         */
+        boolean isTestOnReturn();
+
+        /**
+         * Returns whether idle objects are validated in the background, by the maintenance task.
+         * <p>
+         * Every run of the maintenance task validates a {@link #getValidationBatchSize() batch} of idle objects
+         * which were not validated within the {@link #getValidationInterval() validation interval}.
+         *
+         * @return {@code true} to validate idle objects, {@code false} otherwise
+         * @see ObjectFactory#validateObject(ObjectPool, Object)
+         */
+        boolean isTestWhileIdle();
+
+        /**
+         * Returns the interval during which an object is considered valid after it was validated (or created).
+         *
+         * @return a positive duration
+         */
+        Duration getValidationInterval();
+
+        /**
+         * Returns the fraction of borrows which validate the object, when objects are validated on borrow.
+         *
+         * @return a value between 0 and 1
+         */
+        float getValidationSamplingRate();
+
+        /**
+         * Returns the maximum number of idle objects validated by a run of the maintenance task.
+         *
+         * @return a positive integer
+         */
+        int getValidationBatchSize();
+
+        /**
+         * Returns whether the factory work done in the background runs on virtual threads.
+         * <p>
+         * Objects created on behalf of asynchronous borrowers, by the warm-up and while the pool is replenished run in
+         * virtual threads instead of the threads owned by the pool, which allows a large number of slow factories (usually
+         * blocked on I/O) to run in parallel without holding platform threads.
+         * Borrowers waiting for an object never pin the carrier thread, regardless of this option.
+         * <p>
+         * Only the background work moves to virtual threads: a {@link ObjectPool#borrowObject() synchronous borrow}
+         * creates and activates its object on the calling thread, and the thread of the caller decides whether that
+         * work runs on a virtual thread.
+         * <p>
+         * Requires Java 21 or newer.
+         *
+         * @return {@code true} to run factory work on virtual threads, {@code false} to run it on threads owned by the pool
+         * @see ObjectPoolUtils#isVirtualThreadSupported()
+         */
+        boolean isVirtualThreads();
+
         /**
          * Returns the borrow strategy.
          *
@@ -343,8 +937,12 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
 
         /**
          * Returns the executor used for maintenance tasks.
+         * <p>
+         * If no executor was configured, the pool uses a {@link ObjectPoolUtils#getDefaultExecutor() shared executor}.
+         * Objects are never created on this executor: the pool creates objects in the background on its own threads
+         * (at most {@link #getCreationConcurrency()}), so a slow factory does not delay the maintenance of other pools.
          *
-         * @return a non-null instance
+         * @return the executor, null if not configured
          */
         ScheduledExecutorService getExecutor();
     }
@@ -401,6 +999,19 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
             return this;
         }
 
+        /**
+         * Changes how the node which serves a borrow is selected.
+         *
+         * @param nodeSelection the node selection strategy
+         * @return self
+         * @see Options#getNodeSelection()
+         */
+        public Builder<T> nodeSelection(NodeSelection nodeSelection) {
+            requireNonNull(nodeSelection);
+            options.nodeSelection = nodeSelection;
+            return this;
+        }
+
         /**
          * Changes the minimum number of objects.
          *
@@ -440,24 +1051,26 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
         /**
          * Changes the abandoned timeout.
          *
-         * @param abandonedTimeout the abandoned timeout
+         * @param abandonedTimeout the abandoned timeout, {@link Duration#ZERO} to disable abandonment detection
          * @return self
          * @see Options#getAbandonedTimeout()
          */
         public Builder<T> abandonedTimeout(Duration abandonedTimeout) {
+            requireNonNull(abandonedTimeout);
             options.abandonedTimeout = abandonedTimeout;
             return this;
         }
 
         /**
-         * Changes the inactive timeout.
+         * Changes the connection timeout.
          *
-         * @param inactiveTimeout the inactive timeout
+         * @param connectionTimeout the connection timeout
          * @return self
-         * @see Options#getInactiveTimeout()
+         * @see Options#getConnectionTimeout()
          */
-        public Builder<T> connectionTimeout(Duration inactiveTimeout) {
-            options.inactiveTimeout = inactiveTimeout;
+        public Builder<T> connectionTimeout(Duration connectionTimeout) {
+            requireNonNull(connectionTimeout);
+            options.connectionTimeout = connectionTimeout;
             return this;
         }
 
@@ -488,11 +1101,12 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
         /**
          * Changes the maximum reuse time.
          *
-         * @param maximumReuseTime the maximum reuse time
+         * @param maximumReuseTime the maximum reuse time, {@link Duration#ZERO} to disable retirement by time
          * @return self
          * @see Options#getMaximumReuseTime()
          */
         public Builder<T> maximumReuseTime(Duration maximumReuseTime) {
+            requireNonNull(maximumReuseTime);
             options.maximumReuseTime = maximumReuseTime;
             return this;
         }
@@ -509,6 +1123,218 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
             return this;
         }
 
+        /**
+         * Changes the maximum number of objects created in parallel.
+         *
+         * @param creationConcurrency the maximum number of objects created in parallel
+         * @return self
+         * @see Options#getCreationConcurrency()
+         */
+        public Builder<T> creationConcurrency(int creationConcurrency) {
+            options.creationConcurrency = requireBounded(creationConcurrency, 1, Integer.MAX_VALUE);
+            return this;
+        }
+
+        /**
+         * Changes the interval between two runs of the maintenance task.
+         *
+         * @param maintenanceInterval the maintenance interval, at least one millisecond
+         * @return self
+         * @see Options#getMaintenanceInterval()
+         */
+        public Builder<T> maintenanceInterval(Duration maintenanceInterval) {
+            requireNonNull(maintenanceInterval);
+            if (maintenanceInterval.toMillis() <= 0) {
+                throw new IllegalArgumentException("Maintenance interval must be at least one millisecond");
+            }
+            options.maintenanceInterval = maintenanceInterval;
+            return this;
+        }
+
+        /**
+         * Changes the interval between two runs of the health check.
+         *
+         * @param healthCheckInterval the health check interval, at least one millisecond or {@link Duration#ZERO} to
+         *                            disable the health check
+         * @return self
+         * @see Options#getHealthCheckInterval()
+         */
+        public Builder<T> healthCheckInterval(Duration healthCheckInterval) {
+            requireNonNull(healthCheckInterval);
+            if (!healthCheckInterval.isZero() && healthCheckInterval.toMillis() <= 0) {
+                throw new IllegalArgumentException("Health check interval must be at least one millisecond");
+            }
+            options.healthCheckInterval = healthCheckInterval;
+            return this;
+        }
+
+        /**
+         * Changes the number of consecutive health check failures after which the pool is not available.
+         *
+         * @param healthCheckFailureThreshold the number of failures
+         * @return self
+         * @see Options#getHealthCheckFailureThreshold()
+         */
+        public Builder<T> healthCheckFailureThreshold(int healthCheckFailureThreshold) {
+            options.healthCheckFailureThreshold = requireBounded(healthCheckFailureThreshold, 1, Integer.MAX_VALUE);
+            return this;
+        }
+
+        /**
+         * Changes the interval between two runs of auto-sizing.
+         *
+         * @param autoSizingInterval the auto-sizing interval, zero to disable auto-sizing
+         * @return self
+         * @see Options#getAutoSizingInterval()
+         */
+        public Builder<T> autoSizingInterval(Duration autoSizingInterval) {
+            requireNonNull(autoSizingInterval);
+            options.autoSizingInterval = autoSizingInterval;
+            return this;
+        }
+
+        /**
+         * Changes the budget shared with other pools.
+         *
+         * @param budget the budget, null to limit the pool only by its maximum
+         * @return self
+         * @see Options#getBudget()
+         */
+        public Builder<T> budget(Budget budget) {
+            options.budget = budget;
+            return this;
+        }
+
+        /**
+         * Creates the {@link Options#getMinimum() minimum} number of objects when the pool is created.
+         *
+         * @return self
+         * @see Options#getWarmUpCount()
+         */
+        public Builder<T> warmUp() {
+            options.warmUpCount = -1;
+            return this;
+        }
+
+        /**
+         * Changes the number of objects created when the pool is created.
+         *
+         * @param warmUpCount the number of objects
+         * @return self
+         * @see Options#getWarmUpCount()
+         */
+        public Builder<T> warmUp(int warmUpCount) {
+            options.warmUpCount = requireBounded(warmUpCount, 0, ObjectPoolUtils.MAXIMUM_POOL_SIZE);
+            return this;
+        }
+
+        /**
+         * Changes how long the builder waits for the pool to warm up.
+         *
+         * @param warmUpTimeout the warm-up timeout
+         * @return self
+         * @see Options#getWarmUpTimeout()
+         */
+        public Builder<T> warmUpTimeout(Duration warmUpTimeout) {
+            requireNonNull(warmUpTimeout);
+            options.warmUpTimeout = warmUpTimeout;
+            return this;
+        }
+
+        /**
+         * Changes whether objects are validated before they are borrowed.
+         *
+         * @param testOnBorrow {@code true} to validate objects on borrow, {@code false} otherwise
+         * @return self
+         * @see Options#isTestOnBorrow()
+         */
+        public Builder<T> testOnBorrow(boolean testOnBorrow) {
+            options.testOnBorrow = testOnBorrow;
+            return this;
+        }
+
+        /**
+         * Changes whether objects are validated when they are returned.
+         *
+         * @param testOnReturn {@code true} to validate objects on return, {@code false} otherwise
+         * @return self
+         * @see Options#isTestOnReturn()
+         */
+        public Builder<T> testOnReturn(boolean testOnReturn) {
+            options.testOnReturn = testOnReturn;
+            return this;
+        }
+
+        /**
+         * Changes whether idle objects are validated in the background.
+         *
+         * @param testWhileIdle {@code true} to validate idle objects, {@code false} otherwise
+         * @return self
+         * @see Options#isTestWhileIdle()
+         */
+        public Builder<T> testWhileIdle(boolean testWhileIdle) {
+            options.testWhileIdle = testWhileIdle;
+            return this;
+        }
+
+        /**
+         * Changes the validation interval.
+         *
+         * @param validationInterval the validation interval
+         * @return self
+         * @see Options#getValidationInterval()
+         */
+        public Builder<T> validationInterval(Duration validationInterval) {
+            requireNonNull(validationInterval);
+            options.validationInterval = validationInterval;
+            return this;
+        }
+
+        /**
+         * Changes the fraction of borrows which validate the object.
+         *
+         * @param validationSamplingRate a value between 0 and 1
+         * @return self
+         * @see Options#getValidationSamplingRate()
+         */
+        public Builder<T> validationSamplingRate(float validationSamplingRate) {
+            if (validationSamplingRate < 0 || validationSamplingRate > 1) {
+                throw new IllegalArgumentException("Validation sampling rate must be between 0 and 1");
+            }
+            options.validationSamplingRate = validationSamplingRate;
+            return this;
+        }
+
+        /**
+         * Changes the maximum number of idle objects validated by a run of the maintenance task.
+         *
+         * @param validationBatchSize the batch size
+         * @return self
+         * @see Options#getValidationBatchSize()
+         */
+        public Builder<T> validationBatchSize(int validationBatchSize) {
+            options.validationBatchSize = requireBounded(validationBatchSize, 1, ObjectPoolUtils.MAXIMUM_POOL_SIZE);
+            return this;
+        }
+
+        /**
+         * Changes whether the factory work done in the background runs on virtual threads.
+         * <p>
+         * Synchronous borrows still create and activate objects on the calling thread.
+         *
+         * @param virtualThreads {@code true} to run factory work on virtual threads, {@code false} otherwise
+         * @return self
+         * @throws ObjectPoolException if the JVM does not support virtual threads
+         * @see Options#isVirtualThreads()
+         */
+        public Builder<T> virtualThreads(boolean virtualThreads) {
+            if (virtualThreads && !ObjectPoolUtils.isVirtualThreadSupported()) {
+                throw new ObjectPoolException("Virtual threads are not supported by this JVM");
+            }
+            options.virtualThreads = virtualThreads;
+            return this;
+        }
+
         /**
          * Changes the strategy.
          *
@@ -541,11 +1367,25 @@ public interface ObjectPool<T> extends Identifiable<String>, Nameable, Descripta
          * @return a non-null instance
          */
         public ObjectPool<T> build() {
-            return create();
+            ObjectPool<T> pool = create();
+            if (!options.getWarmUpTimeout().isZero()) {
+                try {
+                    pool.whenReady().get(options.getWarmUpTimeout().toNanos(), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException | TimeoutException e) {
+                    // the pool continues to warm up in the background
+                }
+            }
+            return pool;
         }
 
         protected ObjectPool<T> create() {
-            return new ObjectPoolImpl<>(options);
+            if (options.getNodes().size() > 1) {
+                return new MultiNodeObjectPool<>(options);
+            } else {
+                return new ObjectPoolImpl<>(options);
+            }
         }
     }
 }
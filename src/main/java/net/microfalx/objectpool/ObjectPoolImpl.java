@@ -1,23 +1,24 @@
 package net.microfalx.objectpool;
 
-import net.microfalx.lang.TimeUtils;
+import net.microfalx.metrics.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Map;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
+import static net.microfalx.lang.ArgumentUtils.requireBounded;
 import static net.microfalx.lang.ArgumentUtils.requireNonNull;
 import static net.microfalx.lang.ExceptionUtils.rethrowException;
 import static net.microfalx.lang.ExceptionUtils.rethrowExceptionAndReturn;
-import static net.microfalx.lang.TimeUtils.THIRTY_SECONDS;
-import static net.microfalx.lang.TimeUtils.millisSince;
 import static net.microfalx.objectpool.ObjectPoolUtils.METRICS;
 
 /**
@@ -29,28 +30,118 @@ public class ObjectPoolImpl<T> implements ObjectPool<T> {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(ObjectPoolImpl.class);
 
-    private static final long INITIAL_WAIT_TIME = 10;
-    private static final long MAX_WAIT_TIME = 100;
+    private static final float RETIREMENT_JITTER = 0.1f;
+    private static final int DEFAULT_PRIORITY = 0;
 
     private final Options<T> options;
-    private final BlockingDeque<PooledObjectImpl<T>> queue = new LinkedBlockingDeque<>();
-    private final Collection<PooledObjectImpl<T>> objects = new CopyOnWriteArrayList<>();
+    private final ObjectPool<T> owner;
+    private final Node node;
+    private final IdleStore<T> idleObjects;
+    private final WaiterQueue<T> waiters = new WaiterQueue<>();
+    private final Map<IdentityKey, PooledObjectImpl<T>> objects = new ConcurrentHashMap<>();
     private final AtomicBoolean closed = new AtomicBoolean();
-    private final Lock lock = new ReentrantLock();
+    private final AtomicInteger reservedCount = new AtomicInteger();
+    private final SharedCapacity sharedCapacity;
+    private final Semaphore creationPermits;
+    private final Lock batchLock = new ReentrantLock();
+    private final ScheduledExecutorService executor;
+    private final Resources resources;
+    private final boolean sharedResources;
+    private final ExecutorService factoryExecutor;
+    private final ScheduledFuture<?> maintenanceTask;
+    private final AtomicBoolean replenishing = new AtomicBoolean();
+    private final CompletableFuture<ObjectPool<T>> ready = new CompletableFuture<>();
     private final ObjectPoolMetricsImpl metrics = new ObjectPoolMetricsImpl();
-    private volatile long lastAvailableUpdate = TimeUtils.oneHourAgo();
+    private final StateCounters stateCounters = new StateCounters();
+    private final Timer borrowTimer;
+    private final Timer returnTimer;
+    private final Timer invalidateTimer;
+    private final ScheduledFuture<?> healthCheckTask;
+    private final boolean healthChecked;
+    private final AtomicInteger healthCheckFailures = new AtomicInteger();
+    private final AutoSizer autoSizer;
+    private final ScheduledFuture<?> autoSizingTask;
+    private final AtomicBoolean resizing = new AtomicBoolean();
+    private final AtomicBoolean resizeRequested = new AtomicBoolean();
+    private volatile int targetSize;
     private volatile boolean available = true;
 
-    private static final Map<String, ObjectPoolImpl<?>> POOLS = new ConcurrentHashMap<>();
+    private static final Map<String, ObjectPool<?>> POOLS = new ConcurrentHashMap<>();
 
     static Collection<ObjectPool<?>> getPools() {
         return Collections.unmodifiableCollection(POOLS.values());
     }
 
+    static void register(ObjectPool<?> pool) {
+        POOLS.put(pool.getId(), pool);
+    }
+
+    static void unregister(ObjectPool<?> pool) {
+        POOLS.remove(pool.getId(), pool);
+    }
+
     protected ObjectPoolImpl(Options<T> options) {
+        this(options, null);
+    }
+
+    /**
+     * Creates a pool which serves objects from a single node.
+     * <p>
+     * A pool which is owned by another pool (a pool of a node) is not registered and the factory receives the owner
+     * instead of this pool. The pool draws its capacity from the {@link Options#getBudget() budget}, if any.
+     *
+     * @param options the options
+     * @param owner   the pool which owns this pool, null if this pool is not owned
+     */
+    ObjectPoolImpl(Options<T> options, ObjectPool<T> owner) {
+        this(options, owner, (BudgetImpl) options.getBudget(), owner == null, null);
+    }
+
+    /**
+     * Creates a pool which draws its capacity from a capacity shared with other pools.
+     *
+     * @param options        the options
+     * @param owner          the pool which owns this pool, null if this pool is not owned
+     * @param sharedCapacity the capacity shared with other pools, null if the pool is limited only by its options
+     * @param registered     {@code true} to register the pool, {@code false} otherwise
+     * @param resources      the factory executor and metrics shared with other pools, in which case the owner of
+     *                       the pools runs their maintenance, health check and auto-sizing; null if the pool creates
+     *                       its own resources and schedules its own tasks
+     */
+    ObjectPoolImpl(Options<T> options, ObjectPool<T> owner, SharedCapacity sharedCapacity, boolean registered,
+                   Resources resources) {
         requireNonNull(options);
         this.options = options;
-        POOLS.put(options.getId(), this);
+        this.owner = owner != null ? owner : this;
+        this.sharedCapacity = sharedCapacity;
+        this.node = options.getNodes().size() == 1 ? options.getNodes().get(0) : null;
+        this.idleObjects = IdleStore.create(options.getStrategy());
+        this.creationPermits = new Semaphore(options.getCreationConcurrency());
+        this.sharedResources = resources != null;
+        this.resources = sharedResources ? resources : new Resources(options);
+        this.borrowTimer = this.resources.borrowTimer;
+        this.returnTimer = this.resources.returnTimer;
+        this.invalidateTimer = this.resources.invalidateTimer;
+        this.executor = options.getExecutor() != null ? options.getExecutor() : ObjectPoolUtils.getDefaultExecutor();
+        this.factoryExecutor = this.resources.factoryExecutor;
+        long maintenanceInterval = options.getMaintenanceInterval().toMillis();
+        this.maintenanceTask = !sharedResources ? executor.scheduleWithFixedDelay(this::maintain, maintenanceInterval,
+                maintenanceInterval, TimeUnit.MILLISECONDS) : null;
+        long healthCheckInterval = options.getHealthCheckInterval().toMillis();
+        this.healthChecked = healthCheckInterval > 0;
+        this.healthCheckTask = !sharedResources && healthChecked
+                ? executor.scheduleWithFixedDelay(this::checkHealth, healthCheckInterval, healthCheckInterval,
+                TimeUnit.MILLISECONDS) : null;
+        this.targetSize = options.getMaximum();
+        metrics.updateTargetSize(targetSize);
+        long autoSizingInterval = options.getAutoSizingInterval().toMillis();
+        this.autoSizer = autoSizingInterval > 0 ? new AutoSizer(metrics, options.getMinimum(), options.getMaximum(),
+                System.nanoTime()) : null;
+        this.autoSizingTask = !sharedResources && autoSizer != null ? executor.scheduleWithFixedDelay(this::autoSize,
+                autoSizingInterval, autoSizingInterval, TimeUnit.MILLISECONDS) : null;
+        if (sharedCapacity != null) sharedCapacity.attach(this);
+        if (registered) register(this);
+        warmUp();
     }
 
     @Override
@@ -76,90 +167,125 @@ public class ObjectPoolImpl<T> implements ObjectPool<T> {
     @Override
     public final void addObject() {
         checkIfOpen();
-        ADD_METRICS.time(getName(), (t) -> {
-            lock.lock();
-            try {
-                if (objects.size() < options.getMaximum()) {
-                    T object = options.getFactory().makeObject(this);
-                    PooledObjectImpl<T> pooledObject = new PooledObjectImpl<>(this, object);
-                    objects.add(pooledObject);
-                    queue.offer(pooledObject);
-                }
-            } catch (Exception e) {
-                rethrowException(getOptions().getFactory().createObjectCreationException(this, e));
-            } finally {
-                lock.unlock();
-            }
-        });
+        PooledObjectImpl<T> pooledObject = createObject(true);
+        if (pooledObject != null) release(pooledObject);
     }
 
     @Override
     public final T borrowObject() {
+        return doBorrow(options.getMaximumWait(), DEFAULT_PRIORITY).get();
+    }
+
+    @Override
+    public final T borrowObject(Duration timeout) {
+        return borrowObject(timeout, DEFAULT_PRIORITY);
+    }
+
+    @Override
+    public final T borrowObject(Duration timeout, int priority) {
+        requireNonNull(timeout);
+        return doBorrow(timeout, priority).get();
+    }
+
+    @Override
+    public final Lease<T> lease() {
+        return lease(options.getMaximumWait(), DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Borrows an instance, waiting at most the given amount of time, and wraps it in a lease.
+     *
+     * @param timeout  the maximum amount of time to wait for an object
+     * @param priority the priority of the borrow
+     * @return a non-null instance
+     */
+    final Lease<T> lease(Duration timeout, int priority) {
+        requireNonNull(timeout);
+        return new LeaseImpl<>(this, doBorrow(timeout, priority));
+    }
+
+    @Override
+    public final CompletableFuture<T> borrowObjectAsync() {
+        checkIfOpen();
+        AsyncBorrow borrow = new AsyncBorrow();
+        borrow.acquire();
+        return borrow.future;
+    }
+
+    @Override
+    public final List<T> borrowObjects(int count, Duration wait) {
+        requireBounded(count, 1, options.getMaximum());
+        requireNonNull(wait);
         checkIfOpen();
         long startTime = System.nanoTime();
-        long endTime = startTime + options.getMaximumWait().toNanos();
-        return BORROW_METRICS.time(getName(), () -> {
-            long waitForAvailable = INITIAL_WAIT_TIME;
-            while (System.nanoTime() < endTime) {
-                PooledObjectImpl<T> next = pollNext(waitForAvailable);
-                if (next != null && next.getState() == PooledObject.State.IDLE) {
-                    if (activate(next)) {
-                        next.changeState(PooledObject.State.ACTIVE);
-                        metrics.updateBorrowedDuration(System.nanoTime() - startTime);
-                        return next.get();
-                    }
-                } else if (canAddMoreObjects()) {
-                    addObject();
-                }
-                waitForAvailable = (long) Math.max(MAX_WAIT_TIME, waitForAvailable * 1.2f);
+        long endTime = startTime + wait.toNanos();
+        try {
+            List<PooledObjectImpl<T>> batch = acquireBatch(count, endTime);
+            if (batch == null) {
+                return rethrowExceptionAndReturn(getOptions().getFactory().createObjectBorrowException(owner, null));
+            }
+            List<T> objects = new ArrayList<>(count);
+            for (PooledObjectImpl<T> object : batch) {
+                markBorrowed(object, startTime);
+                objects.add(object.get());
             }
-            return rethrowExceptionAndReturn(getOptions().getFactory().createObjectBorrowException(this, null));
-        });
+            return objects;
+        } finally {
+            record(borrowTimer, startTime);
+        }
     }
 
     @Override
     public final void returnObject(T object) {
         requireNonNull(object);
-        RETURN_METRICS.time(getName(), (t) -> {
-            PooledObjectImpl<T> pooledObject = find(object);
-            pooledObject.changeState(PooledObject.State.RETURNING);
-            deactivate(pooledObject);
-            pooledObject.changeState(PooledObject.State.IDLE);
-            queue.offer(pooledObject);
-        });
+        doReturn(find(object));
+    }
+
+    @Override
+    public final void returnObjects(Collection<T> objects) {
+        requireNonNull(objects);
+        List<PooledObjectImpl<T>> batch = new ArrayList<>(objects.size());
+        for (T object : objects) {
+            batch.add(find(requireNonNull(object)));
+        }
+        long startTime = System.nanoTime();
+        PooledObjectImpl<T> notBorrowed = null;
+        try {
+            for (Iterator<PooledObjectImpl<T>> iterator = batch.iterator(); iterator.hasNext(); ) {
+                PooledObjectImpl<T> pooledObject = iterator.next();
+                if (!pooledObject.changeState(PooledObject.State.ACTIVE, PooledObject.State.RETURNING)) {
+                    if (!isDiscarded(pooledObject)) notBorrowed = pooledObject;
+                    iterator.remove();
+                    continue;
+                }
+                markReturned(pooledObject, startTime);
+                metrics.updateReleaseCount();
+            }
+            if (!batch.isEmpty() && deactivate(batch)) {
+                for (PooledObjectImpl<T> pooledObject : batch) {
+                    recycle(pooledObject);
+                }
+            }
+        } finally {
+            metrics.updateReleaseDuration(System.nanoTime() - startTime);
+            record(returnTimer, startTime);
+        }
+        if (notBorrowed != null) throw createNotBorrowedException(notBorrowed);
     }
 
     @Override
     public final void invalidateObject(T object) {
         requireNonNull(object);
-        INVALIDATE_METRICS.time(getName(), (t) -> {
-            PooledObjectImpl<T> pooledObject = find(object);
-            pooledObject.changeState(PooledObject.State.DESTROYING);
-            deactivate(pooledObject);
-            pooledObject.changeState(PooledObject.State.DESTROYED);
-            lock.lock();
-            try {
-                objects.remove(pooledObject);
-            } finally {
-                lock.unlock();
-            }
-        });
+        doInvalidate(find(object));
     }
 
     @Override
     public final void clear() {
-        CLEAR_METRICS.time(getName(), (t) -> {
-            lock.lock();
-            try {
-                objects.forEach(object -> {
-                    if (object.getState() == PooledObject.State.IDLE) {
-                        invalidateObject(object.get());
-                    }
-                });
-            } finally {
-                lock.unlock();
+        CLEAR_METRICS.time(resources.name, (t) -> objects.values().forEach(object -> {
+            if (object.getState() == PooledObject.State.IDLE) {
+                invalidateObject(object.get());
             }
-        });
+        }));
     }
 
     @Override
@@ -169,17 +295,13 @@ public class ObjectPoolImpl<T> implements ObjectPool<T> {
         }
     }
 
+    @Override
+    public final CompletableFuture<ObjectPool<T>> whenReady() {
+        return ready;
+    }
+
     @Override
     public final boolean isAvailable() {
-        if (millisSince(lastAvailableUpdate) < THIRTY_SECONDS) {
-            try {
-                T object = borrowObject();
-                returnObject(object);
-                available = true;
-            } catch (Exception e) {
-                available = false;
-            }
-        }
         return available;
     }
 
@@ -195,19 +317,27 @@ public class ObjectPoolImpl<T> implements ObjectPool<T> {
 
     @Override
     public final int getSize(PooledObject.State state) {
-        requireNonNull(options);
-        return (int) objects.stream().filter(p -> p.getState() == state).count();
+        return stateCounters.get(state);
     }
 
     @Override
     public final Collection<PooledObject<T>> getObjects() {
-        return Collections.unmodifiableCollection(objects);
+        return Collections.unmodifiableCollection(objects.values());
     }
 
     @Override
     public final Collection<PooledObject<T>> getObjects(PooledObject.State state) {
-        requireNonNull(options);
-        return objects.stream().filter(p -> p.getState() == state).collect(Collectors.toList());
+        requireNonNull(state);
+        return new StateView(state);
+    }
+
+    @Override
+    public final void forEachObject(PooledObject.State state, Consumer<? super PooledObject<T>> action) {
+        requireNonNull(state);
+        requireNonNull(action);
+        for (PooledObjectImpl<T> object : objects.values()) {
+            if (object.getState() == state) action.accept(object);
+        }
     }
 
     @Override
@@ -216,16 +346,197 @@ public class ObjectPoolImpl<T> implements ObjectPool<T> {
     }
 
     private void doClose() {
-        CLOSE_METRICS.count(getName());
+        CLOSE_METRICS.count(resources.name);
         LOGGER.debug("Close object pool {}", getName());
-        POOLS.remove(options.getId());
-        for (PooledObjectImpl<T> object : objects) {
+        if (maintenanceTask != null) maintenanceTask.cancel(false);
+        if (healthCheckTask != null) healthCheckTask.cancel(false);
+        if (autoSizingTask != null) autoSizingTask.cancel(false);
+        unregister(this);
+        if (sharedCapacity != null) sharedCapacity.detach(this);
+        for (PooledObjectImpl<T> object : objects.values()) {
             destroyObject(object);
         }
+        waiters.signalAll();
+        if (!sharedResources) resources.close();
+    }
+
+    private PooledObjectImpl<T> doBorrow(Duration timeout, int priority) {
+        checkIfOpen();
+        long startTime = System.nanoTime();
+        long endTime = startTime + timeout.toNanos();
+        try {
+            PooledObjectImpl<T> next;
+            while ((next = acquire(endTime, priority)) != null) {
+                if (borrow(next, startTime)) return next;
+                if (System.nanoTime() - endTime >= 0) break;
+            }
+            return rethrowExceptionAndReturn(getOptions().getFactory().createObjectBorrowException(owner, null));
+        } finally {
+            record(borrowTimer, startTime);
+        }
+    }
+
+    /**
+     * Returns a borrowed object, without looking up its pooled object.
+     *
+     * @param pooledObject the pooled object
+     */
+    void doReturn(PooledObjectImpl<T> pooledObject) {
+        if (!pooledObject.changeState(PooledObject.State.ACTIVE, PooledObject.State.RETURNING)) {
+            // an object destroyed while it was borrowed (abandoned or expired) is not part of the pool anymore
+            if (isDiscarded(pooledObject)) return;
+            throw createNotBorrowedException(pooledObject);
+        }
+        long startTime = System.nanoTime();
+        try {
+            markReturned(pooledObject, startTime);
+            deactivate(pooledObject);
+            recycle(pooledObject);
+        } finally {
+            metrics.updateReleaseCount();
+            metrics.updateReleaseDuration(System.nanoTime() - startTime);
+            record(returnTimer, startTime);
+        }
+    }
+
+    /**
+     * Invalidates a borrowed object, without looking up its pooled object.
+     *
+     * @param pooledObject the pooled object
+     */
+    void doInvalidate(PooledObjectImpl<T> pooledObject) {
+        long startTime = System.nanoTime();
+        try {
+            PooledObject.State state = pooledObject.changeState(PooledObject.State.DESTROYING);
+            if (state == null) return;
+            if (state == PooledObject.State.ACTIVE) markReturned(pooledObject, startTime);
+            deactivate(pooledObject);
+            pooledObject.changeState(PooledObject.State.DESTROYING, PooledObject.State.DESTROYED);
+            if (removeObject(pooledObject)) unreserve();
+            idleObjects.remove(pooledObject);
+            waiters.signal();
+            scheduleReplenish();
+        } finally {
+            record(invalidateTimer, startTime);
+        }
+    }
+
+    /**
+     * Records the duration of an operation with a timer bound to this pool.
+     *
+     * @param timer     the timer
+     * @param startTime the time when the operation started, in {@link System#nanoTime()} units
+     */
+    private static void record(Timer timer, long startTime) {
+        timer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
     }
 
     private boolean canAddMoreObjects() {
-        return objects.size() < options.getMaximum();
+        return reservedCount.get() < targetSize;
+    }
+
+    /**
+     * Returns whether a borrower can create an object right away, without waiting for creation permits or for
+     * capacity shared with other pools.
+     *
+     * @return {@code true} if an object can be created, {@code false} otherwise
+     */
+    private boolean canCreateObject() {
+        return canAddMoreObjects() && creationPermits.availablePermits() > 0
+                && (sharedCapacity == null || !sharedCapacity.isExhausted());
+    }
+
+    /**
+     * Reserves capacity for a new object.
+     *
+     * @return {@code true} if the capacity was reserved, {@code false} if the pool is full
+     */
+    private boolean reserve() {
+        for (; ; ) {
+            int count = reservedCount.get();
+            if (count >= targetSize) return false;
+            if (reservedCount.compareAndSet(count, count + 1)) break;
+        }
+        if (sharedCapacity == null || sharedCapacity.reserve(this)) return true;
+        reservedCount.decrementAndGet();
+        return false;
+    }
+
+    /**
+     * Gives back the capacity of an object which was destroyed (or never created).
+     */
+    private void unreserve() {
+        reservedCount.decrementAndGet();
+        if (sharedCapacity != null) sharedCapacity.release();
+    }
+
+    /**
+     * Destroys an idle object to give its capacity to another pool, unless the pool would drop under its minimum.
+     *
+     * @return {@code true} if an object was destroyed, {@code false} otherwise
+     */
+    boolean evictIdle() {
+        if (isClosed() || getSize(PooledObject.State.IDLE) <= options.getMinimum()) return false;
+        for (PooledObjectImpl<T> object : objects.values()) {
+            if (object.getState() != PooledObject.State.IDLE || !idleObjects.take(object)) continue;
+            LOGGER.debug("Evict object {} from pool {}", object.getName(), getName());
+            destroyObject(object);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns when an object was borrowed from this pool last time.
+     *
+     * @return the time, in milliseconds since epoch, 0 if no object was borrowed
+     */
+    long getLastBorrowedTime() {
+        long lastBorrowed = 0;
+        for (PooledObjectImpl<T> object : objects.values()) {
+            lastBorrowed = Math.max(lastBorrowed, object.getMetrics().getLastBorrowedTimestamp());
+        }
+        return lastBorrowed;
+    }
+
+    /**
+     * Closes the pool if it holds no objects and nobody waits for one.
+     * <p>
+     * The pool stops to accept new objects before it is closed, so a borrower which still uses the pool fails with
+     * a closed pool instead of receiving an object which would be destroyed.
+     *
+     * @return {@code true} if the pool was closed, {@code false} otherwise
+     */
+    boolean closeIfUnused() {
+        if (isClosed() || !waiters.isEmpty()) return false;
+        if (!reservedCount.compareAndSet(0, Integer.MAX_VALUE)) return false;
+        close();
+        return true;
+    }
+
+    /**
+     * Returns whether borrowers wait for objects.
+     *
+     * @return {@code true} if borrowers wait, {@code false} otherwise
+     */
+    boolean hasWaiters() {
+        return !waiters.isEmpty();
+    }
+
+    /**
+     * Returns the number of borrowers waiting for objects.
+     *
+     * @return a positive integer
+     */
+    int getWaiterCount() {
+        return waiters.size();
+    }
+
+    /**
+     * Wakes up a borrower, which tries again to acquire (or create) an object.
+     */
+    void signalWaiter() {
+        waiters.signal();
     }
 
     private void checkIfOpen() {
@@ -233,66 +544,956 @@ public class ObjectPoolImpl<T> implements ObjectPool<T> {
     }
 
     private void destroyObject(PooledObjectImpl<T> object) {
-        objects.remove(object);
-        object.getLock().lock();
+        // only the thread which moves the object to DESTROYING destroys it
+        if (object.changeState(PooledObject.State.DESTROYING) == null) return;
+        if (removeObject(object)) unreserve();
+        idleObjects.remove(object);
+        waiters.signal();
+        scheduleReplenish();
+        LOGGER.debug("Destroy object {}", object);
         try {
-            LOGGER.debug("Destroy object {}", object);
-            object.changeState(PooledObject.State.DESTROYING);
+            options.getFactory().destroyObject(owner, object.get());
+        } catch (Exception e) {
+            LOGGER.atDebug().setCause(e).log("Failed to destroy object {}", object);
+        } finally {
+            object.changeState(PooledObject.State.DESTROYING, PooledObject.State.DESTROYED);
+        }
+    }
+
+    /**
+     * Returns whether an object was destroyed (or it is about to be destroyed) by the pool.
+     *
+     * @param object the pooled object
+     * @return {@code true} if discarded, {@code false} otherwise
+     */
+    private static boolean isDiscarded(PooledObjectImpl<?> object) {
+        PooledObject.State state = object.getState();
+        return state == PooledObject.State.ABANDONED || state == PooledObject.State.DESTROYING
+                || state == PooledObject.State.DESTROYED;
+    }
+
+    private ObjectPoolException createNotBorrowedException(PooledObjectImpl<T> object) {
+        return new ObjectPoolException("Returned object (" + object.get() + ") is not borrowed, its state is "
+                + object.getState());
+    }
+
+    /**
+     * Returns the pooled object which wraps an object.
+     *
+     * @param object the object
+     * @return the pooled object, null if the object was not created by this pool
+     */
+    PooledObjectImpl<T> lookup(T object) {
+        IdentityKey key = LOOKUP_KEY.get();
+        key.object = object;
+        try {
+            return objects.get(key);
+        } finally {
+            key.object = null;
+        }
+    }
+
+    private boolean removeObject(PooledObjectImpl<T> object) {
+        IdentityKey key = LOOKUP_KEY.get();
+        key.object = object.get();
+        try {
+            return objects.remove(key, object);
+        } finally {
+            key.object = null;
+        }
+    }
+
+    private PooledObjectImpl<T> find(T object) {
+        PooledObjectImpl<T> pooledObject = lookup(object);
+        if (pooledObject == null) {
+            throw new ObjectPoolException("Returned object (" + object + ") was not created by this pool");
+        }
+        return pooledObject;
+    }
+
+    /**
+     * Creates a new object, if the pool has capacity.
+     * <p>
+     * The capacity is reserved before the factory is called, which allows objects to be created in parallel
+     * without holding any lock while the factory does its (usually slow) work.
+     *
+     * @param wait {@code true} to wait for other creations to complete if too many are in progress, {@code false}
+     *             to give up
+     * @return the pooled object, null if the pool is full or too many objects are being created
+     */
+    private PooledObjectImpl<T> createObject(boolean wait) {
+        if (!acquireCreationPermit(wait)) return null;
+        try {
+            if (!reserve()) return null;
+            PooledObjectImpl<T> pooledObject = null;
             try {
-                options.getFactory().destroyObject(this, object.get());
-            } catch (Exception e) {
-                LOGGER.atDebug().setCause(e).log("Failed to destroy object {}", object);
+                pooledObject = ADD_METRICS.time(resources.name, () -> {
+                    long startTime = System.nanoTime();
+                    try {
+                        T object = options.getFactory().makeObject(owner, node);
+                        metrics.updateCreationDuration(System.nanoTime() - startTime);
+                        metrics.updateCreatedCount();
+                        updateHealth(true);
+                        PooledObjectImpl<T> newObject = new PooledObjectImpl<>(this, object, stateCounters);
+                        updateRetirement(newObject);
+                        return newObject;
+                    } catch (Exception e) {
+                        metrics.updateCreationFailureCount();
+                        updateHealth(false);
+                        return rethrowExceptionAndReturn(getOptions().getFactory().createObjectCreationException(owner, e));
+                    }
+                });
+                objects.put(new IdentityKey(pooledObject.get()), pooledObject);
+                idleObjects.add(pooledObject);
+                if (isClosed()) {
+                    destroyObject(pooledObject);
+                    return null;
+                }
+                return pooledObject;
             } finally {
-                object.changeState(PooledObject.State.DESTROYED);
+                if (pooledObject == null) unreserve();
             }
         } finally {
-            object.getLock().unlock();
+            creationPermits.release();
+            // a waiter might have been left behind because too many objects were created in parallel
+            if (canAddMoreObjects()) waiters.signal();
         }
     }
 
-    private PooledObjectImpl<T> find(T object) {
-        for (PooledObjectImpl<T> pooledObject : objects) {
-            if (pooledObject.get() == object) {
-                return pooledObject;
+    private boolean acquireCreationPermit(boolean wait) {
+        if (!wait) return creationPermits.tryAcquire();
+        try {
+            return creationPermits.tryAcquire(options.getConnectionTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ObjectPoolException("Interrupted while waiting to create an object in pool '" + getName() + "'", e);
+        }
+    }
+
+    /**
+     * Acquires an idle object, creates a new one or waits for one to be returned, whichever comes first.
+     * <p>
+     * An idle object (or a new one) is acquired even if the deadline already passed, only waiting is skipped.
+     *
+     * @param endTime  the deadline, in {@link System#nanoTime()} units
+     * @param priority the priority of the borrower
+     * @return the pooled object, null if no object became available before the deadline
+     */
+    private PooledObjectImpl<T> acquire(long endTime, int priority) {
+        do {
+            checkIfOpen();
+            PooledObjectImpl<T> next = idleObjects.poll();
+            if (next == null && canAddMoreObjects()) next = createObject(false);
+            if (next == null && System.nanoTime() - endTime < 0) next = awaitObject(endTime, priority);
+            if (next != null) return next;
+        } while (System.nanoTime() - endTime < 0);
+        return null;
+    }
+
+    /**
+     * Activates an object acquired by a borrower.
+     *
+     * @param object    the pooled object, owned by the caller
+     * @param startTime the time when the borrow started, in {@link System#nanoTime()} units
+     * @return {@code true} if the object was borrowed, {@code false} if it cannot be borrowed
+     */
+    private boolean borrow(PooledObjectImpl<T> object, long startTime) {
+        // the object might have been destroyed by the pool while it was validated or activated
+        if (claim(object) && validateOnBorrow(object) && activate(object)
+                && object.getState() == PooledObject.State.ACTIVE) {
+            markBorrowed(object, startTime);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Claims an idle object for a borrower.
+     * <p>
+     * The object is stamped as borrowed before it becomes active, so the maintenance never takes an object which is
+     * still validated or activated (and not handed out yet) for an abandoned or expired one.
+     *
+     * @param object the pooled object, owned by the caller
+     * @return {@code true} if the object was claimed, {@code false} if it is not idle anymore
+     */
+    private boolean claim(PooledObjectImpl<T> object) {
+        object.getMetrics().updateLastBorrowed(System.currentTimeMillis());
+        return object.changeState(PooledObject.State.IDLE, PooledObject.State.ACTIVE);
+    }
+
+    /**
+     * Updates the metrics of an object claimed by a borrower.
+     *
+     * @param object    the pooled object, already {@link PooledObject.State#ACTIVE active}
+     * @param startTime the time when the borrow started, in {@link System#nanoTime()} units
+     */
+    private void markBorrowed(PooledObjectImpl<T> object, long startTime) {
+        long currentTime = System.nanoTime();
+        object.updateBorrowTime(currentTime);
+        object.getMetrics().updateBorrowCount();
+        metrics.updateBorrowCount();
+        metrics.updateBorrowWait(currentTime - startTime);
+    }
+
+    /**
+     * Updates the metrics of an object which is not borrowed anymore.
+     *
+     * @param object      the pooled object
+     * @param currentTime the time when the object was returned, in {@link System#nanoTime()} units
+     */
+    private void markReturned(PooledObjectImpl<T> object, long currentTime) {
+        long borrowedDuration = currentTime - object.getBorrowTime();
+        object.getMetrics().updateBorrowedDuration(borrowedDuration);
+        object.getMetrics().updateLastReturned(System.currentTimeMillis());
+        metrics.updateBorrowedDuration(borrowedDuration);
+    }
+
+    /**
+     * Acquires and activates a batch of objects.
+     * <p>
+     * Batches are acquired one at a time, so two batch borrowers never wait for each other while each one holds
+     * part of the objects needed by the other one.
+     *
+     * @param count   the number of objects
+     * @param endTime the deadline, in {@link System#nanoTime()} units
+     * @return the activated objects, null if not all objects became available before the deadline
+     */
+    private List<PooledObjectImpl<T>> acquireBatch(int count, long endTime) {
+        if (!lockBatch(endTime)) return null;
+        List<PooledObjectImpl<T>> batch = new ArrayList<>(count);
+        boolean acquired = false;
+        try {
+            while (batch.size() < count) {
+                int start = batch.size();
+                if (idleObjects.poll(batch, count - start) == 0) {
+                    PooledObjectImpl<T> next = acquire(endTime, DEFAULT_PRIORITY);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                for (int i = batch.size() - 1; i >= start; i--) {
+                    PooledObjectImpl<T> next = batch.get(i);
+                    if (!claim(next) || !validateOnBorrow(next)) batch.remove(i);
+                }
+                if (batch.size() == count && !activate(batch)) batch.clear();
+                // objects destroyed by the pool while they were activated are replaced
+                batch.removeIf(next -> next.getState() != PooledObject.State.ACTIVE);
+                if (batch.size() < count && System.nanoTime() - endTime >= 0) break;
             }
+            acquired = batch.size() == count;
+            return acquired ? batch : null;
+        } finally {
+            if (!acquired) batch.forEach(this::unclaim);
+            batchLock.unlock();
         }
-        throw new ObjectPoolException("Returned object (" + object + ") was not created by this pool");
     }
 
-    private PooledObjectImpl<T> pollNext(long waitForAvailable) {
+    private boolean lockBatch(long endTime) {
         try {
-            if (options.getStrategy() == Strategy.FIFO) {
-                return queue.pollFirst(waitForAvailable, TimeUnit.MILLISECONDS);
-            } else {
-                return queue.pollLast(waitForAvailable, TimeUnit.MILLISECONDS);
+            return batchLock.tryLock(endTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ObjectPoolException("Interrupted while waiting for objects in pool '" + getName() + "'", e);
+        }
+    }
+
+    private PooledObjectImpl<T> awaitObject(long endTime, int priority) {
+        requestResize();
+        WaiterQueue.Waiter<T> waiter = waiters.enqueue(endTime, priority);
+        // an object might have been released (or capacity freed) before the waiter was registered
+        PooledObjectImpl<T> next = idleObjects.poll();
+        if (next != null || canCreateObject()) {
+            // without an object, the borrower tries again to create one
+            if (waiters.cancel(waiter)) return next;
+            PooledObjectImpl<T> handedObject = waiter.get();
+            if (handedObject == null) {
+                // the waiter was signalled, but it leaves with the idle object
+                if (next != null) waiters.signal();
+                return next;
             }
+            if (next != null) release(next);
+            return handedObject;
+        }
+        if (sharedCapacity != null && sharedCapacity.isExhausted()) sharedCapacity.waiting(this);
+        try {
+            next = waiters.await(waiter, endTime);
+            // a signal received when the deadline passed is not used by this borrower
+            if (next == null && waiter.isSignalled() && System.nanoTime() - endTime >= 0) waiters.signal();
+            return next;
         } catch (InterruptedException e) {
-            throw new ObjectPoolException("Failed to poll next object ", e);
+            Thread.currentThread().interrupt();
+            throw new ObjectPoolException("Interrupted while waiting for an object in pool '" + getName() + "'", e);
+        }
+    }
+
+    /**
+     * Makes a returned (and deactivated) object idle again, unless it is not valid or it has to be retired.
+     *
+     * @param object the pooled object, owned by the caller
+     */
+    private void recycle(PooledObjectImpl<T> object) {
+        if (object.getState() != PooledObject.State.RETURNING) return;
+        if (options.isTestOnReturn() && !validate(object)) return;
+        if (object.shouldRetire(System.nanoTime())) {
+            retire(object);
+            return;
         }
+        if (object.changeState(PooledObject.State.RETURNING, PooledObject.State.IDLE)) release(object);
+    }
+
+    /**
+     * Gives back an object claimed by a borrower, which was not handed out.
+     *
+     * @param object the pooled object
+     */
+    private void unclaim(PooledObjectImpl<T> object) {
+        if (object.changeState(PooledObject.State.ACTIVE, PooledObject.State.IDLE)) release(object);
+    }
+
+    /**
+     * Makes an idle object available to borrowers, handing it directly to the oldest waiter, if any.
+     *
+     * @param object the idle object
+     */
+    private void release(PooledObjectImpl<T> object) {
+        if (waiters.handoff(object)) return;
+        idleObjects.offer(object);
+        if (sharedCapacity != null) sharedCapacity.used(this);
+        // a borrower might have started to wait after the hand-off was attempted
+        while (!waiters.isEmpty()) {
+            PooledObjectImpl<T> next = idleObjects.poll();
+            if (next == null) break;
+            if (!waiters.handoff(next)) {
+                idleObjects.offer(next);
+                break;
+            }
+        }
+        if (sharedCapacity != null && sharedCapacity.isExhausted()) sharedCapacity.idle(this);
+    }
+
+    /**
+     * Creates, in parallel, the objects requested to be available when the pool is created.
+     */
+    private void warmUp() {
+        int count = Math.min(options.getWarmUpCount(), options.getMaximum());
+        metrics.updateWarmUpCount(count);
+        if (count == 0) {
+            ready.complete(this);
+            return;
+        }
+        LOGGER.debug("Warm up object pool {} with {} objects", getName(), count);
+        CompletableFuture<?>[] tasks = new CompletableFuture[count];
+        for (int i = 0; i < count; i++) {
+            tasks[i] = CompletableFuture.runAsync(this::warmUpObject, factoryExecutor);
+        }
+        CompletableFuture.allOf(tasks).whenComplete((result, throwable) -> ready.complete(this));
+    }
+
+    private void warmUpObject() {
+        try {
+            PooledObjectImpl<T> pooledObject = createObject(true);
+            if (pooledObject != null) release(pooledObject);
+        } catch (Exception e) {
+            LOGGER.atDebug().setCause(e).log("Failed to warm up object pool {}", getName());
+        } finally {
+            metrics.updateWarmedUpCount();
+        }
+    }
+
+    /**
+     * Runs periodically, on the pool executor (or by the owner of the pool).
+     */
+    void maintain() {
+        try {
+            detectAbandoned();
+            retireExpired();
+            validateIdle();
+            replenish();
+        } catch (Exception e) {
+            LOGGER.atWarn().setCause(e).log("Maintenance failed for object pool {}", getName());
+        }
+    }
+
+    /**
+     * Runs periodically (or when borrowers have to wait), on the pool executor (or by the owner of the pool), and
+     * adjusts the number of objects the pool aims to hold.
+     * <p>
+     * Idle objects above the new target are destroyed, while borrowers waiting for an object are woken up if
+     * the target grew, so they can create new objects.
+     */
+    void autoSize() {
+        resizeRequested.set(false);
+        if (isClosed() || !resizing.compareAndSet(false, true)) return;
+        try {
+            int previousTargetSize = targetSize;
+            int newTargetSize = autoSizer.resize(System.nanoTime(), getSize(PooledObject.State.ACTIVE), !waiters.isEmpty());
+            targetSize = newTargetSize;
+            if (newTargetSize == previousTargetSize) return;
+            LOGGER.debug("Resize object pool {} from {} to {} objects, arrival rate {}/s, demand {}", getName(),
+                    previousTargetSize, newTargetSize, metrics.getArrivalRate(), metrics.getDemand());
+            for (int i = previousTargetSize; i < newTargetSize; i++) {
+                waiters.signal();
+            }
+            int excess = reservedCount.get() - newTargetSize;
+            for (PooledObjectImpl<T> object : objects.values()) {
+                if (excess <= 0 || isClosed()) break;
+                if (object.getState() != PooledObject.State.IDLE || !idleObjects.take(object)) continue;
+                destroyObject(object);
+                excess--;
+            }
+        } catch (Exception e) {
+            LOGGER.atWarn().setCause(e).log("Auto-sizing failed for object pool {}", getName());
+        } finally {
+            resizing.set(false);
+        }
+    }
+
+    /**
+     * Runs auto-sizing as soon as possible, because borrowers have to wait while the pool is below its maximum.
+     */
+    private void requestResize() {
+        if (autoSizer == null || targetSize >= options.getMaximum()) return;
+        if (!resizeRequested.compareAndSet(false, true)) return;
+        try {
+            executor.execute(this::autoSize);
+        } catch (RejectedExecutionException e) {
+            resizeRequested.set(false);
+        }
+    }
+
+    /**
+     * Runs periodically, on the pool executor (or by the owner of the pool), and updates the availability of the pool.
+     * <p>
+     * The probe validates an idle object. It never creates objects, so an unused pool does not open connections
+     * (or take capacity shared with other pools) just to be probed; the availability of a pool without idle objects
+     * follows the outcome of the objects created for borrowers. The probe never takes objects needed by borrowers:
+     * if borrowers are waiting, the pool is in use and the availability does not change.
+     */
+    void checkHealth() {
+        if (isClosed() || !waiters.isEmpty()) return;
+        try {
+            PooledObjectImpl<T> object = idleObjects.poll();
+            if (object == null || object.getState() != PooledObject.State.IDLE) return;
+            if (validate(object)) {
+                release(object);
+                updateHealth(true);
+            } else {
+                updateHealth(false);
+            }
+        } catch (Exception e) {
+            LOGGER.atDebug().setCause(e).log("Health check failed for object pool {}", getName());
+            updateHealth(false);
+        }
+    }
+
+    private void updateHealth(boolean healthy) {
+        if (!healthChecked) return;
+        if (healthy) {
+            healthCheckFailures.set(0);
+            available = true;
+        } else if (healthCheckFailures.incrementAndGet() >= options.getHealthCheckFailureThreshold()) {
+            if (available) LOGGER.warn("Object pool {} is not available", getName());
+            available = false;
+        }
+    }
+
+    /**
+     * Refills the pool, in the background, up to the minimum number of idle objects.
+     */
+    private void scheduleReplenish() {
+        if (options.getMinimum() == 0 || isClosed()) return;
+        try {
+            factoryExecutor.execute(this::replenish);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Failed to schedule replenish for object pool {}", getName());
+        }
+    }
+
+    /**
+     * Creates objects until the pool holds the minimum number of idle objects (or it is full).
+     */
+    private void replenish() {
+        if (options.getMinimum() == 0 || isClosed() || !replenishing.compareAndSet(false, true)) return;
+        try {
+            int missing = options.getMinimum() - getSize(PooledObject.State.IDLE);
+            while (missing-- > 0 && canAddMoreObjects() && !isClosed()) {
+                PooledObjectImpl<T> pooledObject = createObject(true);
+                if (pooledObject == null) break;
+                release(pooledObject);
+            }
+        } catch (Exception e) {
+            LOGGER.atDebug().setCause(e).log("Failed to replenish object pool {}", getName());
+        } finally {
+            replenishing.set(false);
+        }
+    }
+
+    /**
+     * Calculates when a new object has to be retired.
+     * <p>
+     * Each object gets a random discount from the reuse limits, so objects created at the same time (like on
+     * warm-up) are not all retired at the same time.
+     *
+     * @param object the new object
+     */
+    private void updateRetirement(PooledObjectImpl<T> object) {
+        long retireTime = Long.MAX_VALUE;
+        long retireBorrowCount = Long.MAX_VALUE;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long maximumReuseTime = options.getMaximumReuseTime().toNanos();
+        if (maximumReuseTime > 0) {
+            retireTime = System.nanoTime() + maximumReuseTime - (long) (maximumReuseTime * RETIREMENT_JITTER * random.nextFloat());
+        }
+        int maximumReuseCount = options.getMaximumReuseCount();
+        if (maximumReuseCount < Integer.MAX_VALUE) {
+            retireBorrowCount = Math.max(1, maximumReuseCount - (int) (maximumReuseCount * RETIREMENT_JITTER * random.nextFloat()));
+        }
+        object.updateRetirement(retireTime, retireBorrowCount);
+    }
+
+    /**
+     * Retires the objects which exceeded their limits.
+     * <p>
+     * Borrowed objects which exceeded the time-to-live are destroyed. Idle objects which are about to exceed the reuse
+     * limits are replaced: the replacement is created first (if the pool is not full), so the pool does not lose
+     * capacity during the rotation.
+     */
+    private void retireExpired() {
+        long timeToLive = options.getTimeToLiveTimeout().toMillis();
+        long currentTimeMillis = System.currentTimeMillis();
+        long retireTime = System.nanoTime() + options.getMaintenanceInterval().toNanos();
+        for (PooledObjectImpl<T> object : objects.values()) {
+            if (isClosed()) break;
+            PooledObject.State state = object.getState();
+            if (state == PooledObject.State.ACTIVE && timeToLive > 0) {
+                long lastBorrowed = object.getMetrics().getLastBorrowedTimestamp();
+                if (currentTimeMillis - lastBorrowed > timeToLive && object.getState() == PooledObject.State.ACTIVE) {
+                    LOGGER.debug("Object {} from pool {} exceeded its time-to-live, destroy", object.getName(), getName());
+                    metrics.updateRetiredCount();
+                    destroyObject(object);
+                }
+            } else if (state == PooledObject.State.IDLE && object.shouldRetire(retireTime)) {
+                PooledObjectImpl<T> replacement = createReplacement();
+                if (replacement != null) release(replacement);
+                if (!idleObjects.take(object)) continue;
+                metrics.updateRetiredCount();
+                destroyObject(object);
+                if (replacement == null && (replacement = createReplacement()) != null) release(replacement);
+            }
+        }
+    }
+
+    /**
+     * Destroys an object which exceeded its reuse limits and creates its replacement in the background.
+     *
+     * @param object the object owned by the caller
+     */
+    private void retire(PooledObjectImpl<T> object) {
+        LOGGER.debug("Retire object {} from pool {}", object.getName(), getName());
+        metrics.updateRetiredCount();
+        destroyObject(object);
+        try {
+            factoryExecutor.execute(() -> {
+                PooledObjectImpl<T> replacement = createReplacement();
+                if (replacement != null) release(replacement);
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Failed to schedule replacement for object pool {}", getName());
+        }
+    }
+
+    private PooledObjectImpl<T> createReplacement() {
+        if (isClosed()) return null;
+        try {
+            return createObject(true);
+        } catch (Exception e) {
+            LOGGER.atDebug().setCause(e).log("Failed to create replacement in object pool {}", getName());
+            return null;
+        }
+    }
+
+    /**
+     * Validates an idle object about to be borrowed, if validation on borrow is enabled and the object was not
+     * validated recently.
+     *
+     * @param object the pooled object
+     * @return {@code true} if the object can be borrowed, {@code false} if it was invalid (and destroyed)
+     */
+    private boolean validateOnBorrow(PooledObjectImpl<T> object) {
+        if (!options.isTestOnBorrow()) return true;
+        if (System.nanoTime() - object.getLastValidated() < options.getValidationInterval().toNanos()) return true;
+        float samplingRate = options.getValidationSamplingRate();
+        if (samplingRate < 1 && ThreadLocalRandom.current().nextFloat() >= samplingRate) return true;
+        return validate(object);
+    }
+
+    /**
+     * Validates a batch of idle objects which were not validated recently.
+     */
+    private void validateIdle() {
+        if (!options.isTestWhileIdle()) return;
+        long validationInterval = options.getValidationInterval().toNanos();
+        int remaining = options.getValidationBatchSize();
+        for (PooledObjectImpl<T> object : objects.values()) {
+            if (remaining == 0 || isClosed()) break;
+            if (object.getState() != PooledObject.State.IDLE) continue;
+            if (System.nanoTime() - object.getLastValidated() < validationInterval) continue;
+            if (!idleObjects.take(object)) continue;
+            remaining--;
+            if (validate(object)) release(object);
+        }
+    }
+
+    /**
+     * Validates an object owned by the caller.
+     * <p>
+     * An invalid object is destroyed, otherwise the object is switched back to the state it had before validation.
+     *
+     * @param object the pooled object
+     * @return {@code true} if the object is valid, {@code false} otherwise
+     */
+    private boolean validate(PooledObjectImpl<T> object) {
+        PooledObject.State state = object.getState();
+        if (!object.changeState(state, PooledObject.State.VALIDATION)) return false;
+        boolean valid;
+        try {
+            valid = options.getFactory().validateObject(owner, object.get());
+        } catch (Exception e) {
+            LOGGER.atDebug().setCause(e).log("Failed to validate object {}", object);
+            valid = false;
+        }
+        if (valid) {
+            object.updateLastValidated();
+            // the object might have been destroyed by the pool while it was validated
+            return object.changeState(PooledObject.State.VALIDATION, state);
+        } else {
+            LOGGER.debug("Object {} is not valid, destroy", object);
+            metrics.updateValidationFailureCount();
+            destroyObject(object);
+        }
+        return valid;
+    }
+
+    /**
+     * Destroys the borrowed objects which were not used within the abandoned timeout.
+     */
+    private void detectAbandoned() {
+        long abandonedTimeout = options.getAbandonedTimeout().toMillis();
+        if (abandonedTimeout <= 0) return;
+        long currentTime = System.currentTimeMillis();
+        for (PooledObjectImpl<T> object : objects.values()) {
+            if (object.getState() != PooledObject.State.ACTIVE) continue;
+            long lastUsed = getLastUsedTime(object);
+            if (currentTime - lastUsed > abandonedTimeout
+                    && object.changeState(PooledObject.State.ACTIVE, PooledObject.State.ABANDONED)) {
+                LOGGER.warn("Object {} from pool {} was abandoned, last used at {}", object.getName(), getName(),
+                        ObjectPoolUtils.fromInstant(lastUsed));
+                metrics.updateAbandonedCount();
+                destroyObject(object);
+            }
+        }
+    }
+
+    private long getLastUsedTime(PooledObjectImpl<T> object) {
+        long lastUsed = object.getMetrics().getLastBorrowedTimestamp();
+        if (object.get() instanceof UsageReporter usageReporter) {
+            LocalDateTime lastUsedTime = usageReporter.getLastUsedTime();
+            if (lastUsedTime != null) {
+                long reportedLastUsed = lastUsedTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                object.getMetrics().updateLastUsed(reportedLastUsed);
+                lastUsed = Math.max(lastUsed, reportedLastUsed);
+            }
+        }
+        return lastUsed;
     }
 
     private void deactivate(PooledObjectImpl<T> object) {
         if (!(options.getFactory() instanceof ActivableObjectFactory)) return;
+        long startTime = System.nanoTime();
         try {
-            ((ActivableObjectFactory<T>) options.getFactory()).deactivateObject(this, object);
+            ((ActivableObjectFactory<T>) options.getFactory()).deactivateObject(owner, object);
         } catch (Exception e) {
             LOGGER.warn("Failed to deactivate object {}, destroy", object);
             destroyObject(object);
+        } finally {
+            metrics.updateDeactivationDuration(System.nanoTime() - startTime);
+        }
+    }
+
+    private boolean deactivate(List<PooledObjectImpl<T>> objects) {
+        if (!(options.getFactory() instanceof ActivableObjectFactory)) return true;
+        long startTime = System.nanoTime();
+        try {
+            ((ActivableObjectFactory<T>) options.getFactory()).deactivateObjects(owner, Collections.unmodifiableList(objects));
+            return true;
+        } catch (Exception e) {
+            LOGGER.warn("Failed to deactivate {} objects, destroy", objects.size());
+            objects.forEach(this::destroyObject);
+            return false;
+        } finally {
+            metrics.updateDeactivationDuration(System.nanoTime() - startTime);
+        }
+    }
+
+    private boolean activate(List<PooledObjectImpl<T>> objects) {
+        if (!(options.getFactory() instanceof ActivableObjectFactory)) return true;
+        long startTime = System.nanoTime();
+        try {
+            ((ActivableObjectFactory<T>) options.getFactory()).activateObjects(owner, Collections.unmodifiableList(objects));
+            return true;
+        } catch (Exception e) {
+            LOGGER.warn("Failed to activate {} objects, destroy", objects.size());
+            objects.forEach(this::destroyObject);
+            return false;
+        } finally {
+            metrics.updateActivationDuration(System.nanoTime() - startTime);
         }
     }
 
     private boolean activate(PooledObjectImpl<T> object) {
         if (!(options.getFactory() instanceof ActivableObjectFactory)) return true;
+        long startTime = System.nanoTime();
         try {
-            ((ActivableObjectFactory<T>) options.getFactory()).activateObject(this, object);
+            ((ActivableObjectFactory<T>) options.getFactory()).activateObject(owner, object);
             return true;
         } catch (Exception e) {
             LOGGER.warn("Failed to activate object {}, destroy", object);
             destroyObject(object);
             return false;
+        } finally {
+            metrics.updateActivationDuration(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * A borrow which waits for an object without holding a thread.
+     * <p>
+     * Each step runs on the thread which makes progress possible: the caller (idle object), the factory executor
+     * (object creation), the pool executor (timeout) or the thread which returned an object (hand-off).
+     */
+    private final class AsyncBorrow {
+
+        private final long startTime = System.nanoTime();
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private volatile WaiterQueue.Waiter<T> waiter;
+        private volatile ScheduledFuture<?> timeoutTask;
+
+        private AsyncBorrow() {
+            future.whenComplete((object, throwable) -> {
+                WaiterQueue.Waiter<T> currentWaiter = waiter;
+                if (currentWaiter != null) waiters.cancel(currentWaiter);
+                ScheduledFuture<?> currentTimeoutTask = timeoutTask;
+                if (currentTimeoutTask != null) currentTimeoutTask.cancel(false);
+            });
+        }
+
+        /**
+         * Acquires an idle object, starts the creation of a new one or registers a waiter, whichever comes first.
+         */
+        private void acquire() {
+            try {
+                while (!future.isDone()) {
+                    checkIfOpen();
+                    PooledObjectImpl<T> next = idleObjects.poll();
+                    if (next != null) {
+                        if (complete(next)) return;
+                    } else if (canAddMoreObjects()) {
+                        factoryExecutor.execute(this::create);
+                        return;
+                    } else if (await()) {
+                        return;
+                    }
+                }
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Registers a waiter.
+         *
+         * @return {@code true} if the borrow waits, {@code false} if it should try again to acquire an object
+         */
+        private boolean await() {
+            long endTime = startTime + options.getMaximumWait().toNanos();
+            long remaining = endTime - System.nanoTime();
+            if (remaining <= 0) {
+                timeout();
+                return true;
+            }
+            if (timeoutTask == null) timeoutTask = executor.schedule(this::timeout, remaining, TimeUnit.NANOSECONDS);
+            requestResize();
+            WaiterQueue.Waiter<T> newWaiter = waiters.enqueue(this::wakeUp, endTime, DEFAULT_PRIORITY);
+            waiter = newWaiter;
+            if (future.isDone()) {
+                waiters.cancel(newWaiter);
+                return true;
+            }
+            // an object might have been released (or capacity freed) before the waiter was registered
+            PooledObjectImpl<T> next = idleObjects.poll();
+            if (next == null && !canCreateObject()) {
+                if (sharedCapacity != null && sharedCapacity.isExhausted()) sharedCapacity.waiting(ObjectPoolImpl.this);
+                return true;
+            }
+            if (waiters.cancel(newWaiter)) {
+                // without an object, the borrow tries again to create one
+                return next != null && complete(next);
+            } else {
+                // the waiter was woken up, its listener takes over the borrow
+                if (next != null) release(next);
+                return true;
+            }
+        }
+
+        private void wakeUp(WaiterQueue.Waiter<T> wokenWaiter) {
+            PooledObjectImpl<T> next = wokenWaiter.get();
+            if (next == null && future.isDone()) {
+                // the borrow completed before its waiter was cancelled, pass the signal to the next waiter
+                waiters.signal();
+            } else if (next == null || !complete(next)) {
+                acquire();
+            }
+        }
+
+        private void create() {
+            try {
+                PooledObjectImpl<T> next = createObject(true);
+                if (next == null || !complete(next)) acquire();
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Borrows an object on behalf of this borrow.
+         *
+         * @param object the pooled object, owned by the caller
+         * @return {@code true} if the borrow is completed, {@code false} if the object cannot be borrowed
+         */
+        private boolean complete(PooledObjectImpl<T> object) {
+            if (future.isDone()) {
+                release(object);
+                return true;
+            }
+            if (!borrow(object, startTime)) return false;
+            if (!future.complete(object.get())) returnObject(object.get());
+            return true;
+        }
+
+        private void timeout() {
+            if (future.isDone()) return;
+            future.completeExceptionally(getOptions().getFactory().createObjectBorrowException(owner, null));
         }
     }
 
+    /**
+     * A live view over the objects in a given state, which filters the objects of the pool while it is iterated.
+     */
+    private final class StateView extends AbstractCollection<PooledObject<T>> {
+
+        private final PooledObject.State state;
+
+        private StateView(PooledObject.State state) {
+            this.state = state;
+        }
+
+        @Override
+        public Iterator<PooledObject<T>> iterator() {
+            Iterator<PooledObjectImpl<T>> iterator = objects.values().iterator();
+            return new Iterator<>() {
+
+                private PooledObjectImpl<T> next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && iterator.hasNext()) {
+                        PooledObjectImpl<T> object = iterator.next();
+                        if (object.getState() == state) next = object;
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public PooledObject<T> next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    PooledObject<T> object = next;
+                    next = null;
+                    return object;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return getSize(state);
+        }
+    }
+
+    /**
+     * The factory executor and the metrics of a pool, which can be shared by several pools (like the pools of the keys
+     * of a {@link KeyedObjectPool}), so their cost does not grow with the number of pools.
+     */
+    static final class Resources {
+
+        private final String name;
+        private final ExecutorService factoryExecutor;
+        private final Timer borrowTimer;
+        private final Timer returnTimer;
+        private final Timer invalidateTimer;
+
+        /**
+         * Creates the resources used by the pools created with some options.
+         *
+         * @param options the options
+         */
+        Resources(Options<?> options) {
+            requireNonNull(options);
+            this.name = options.getName();
+            this.factoryExecutor = options.isVirtualThreads()
+                    ? ObjectPoolUtils.createVirtualThreadExecutor("Object Pool " + name)
+                    : ObjectPoolUtils.createFactoryExecutor("Object Pool " + name + " Factory",
+                    Math.min(options.getCreationConcurrency(), options.getMaximum()));
+            this.borrowTimer = BORROW_METRICS.getTimer(name);
+            this.returnTimer = RETURN_METRICS.getTimer(name);
+            this.invalidateTimer = INVALIDATE_METRICS.getTimer(name);
+        }
+
+        /**
+         * Releases the resources, once the pools which use them are closed.
+         */
+        void close() {
+            factoryExecutor.shutdown();
+        }
+    }
+
+    /**
+     * A key which identifies a pooled object by reference, regardless of how the object implements
+     * {@link Object#equals(Object)} and {@link Object#hashCode()}.
+     * <p>
+     * Keys stored in the map never change. Lookups use a key which is reused by each thread and points to the
+     * object only for the duration of the lookup, so returning an object does not allocate memory.
+     */
+    private static final class IdentityKey {
+
+        private Object object;
+
+        private IdentityKey(Object object) {
+            this.object = object;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IdentityKey that && that.object == object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+    }
+
+    private static final ThreadLocal<IdentityKey> LOOKUP_KEY = ThreadLocal.withInitial(() -> new IdentityKey(null));
+
     private static final net.microfalx.metrics.Metrics ADD_METRICS = METRICS.withGroup("Add");
     private static final net.microfalx.metrics.Metrics BORROW_METRICS = METRICS.withGroup("Borrow");
     private static final net.microfalx.metrics.Metrics RETURN_METRICS = METRICS.withGroup("Return");
@@ -2,20 +2,48 @@ package net.microfalx.objectpool;
 
 import java.time.Duration;
 import java.time.ZonedDateTime;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import static java.time.Duration.ofNanos;
 import static net.microfalx.objectpool.ObjectPoolUtils.fromInstant;
 
+/**
+ * Implementation of {@link ObjectPool.Metrics}.
+ * <p>
+ * Counters updated on borrow and return are striped ({@link LongAdder}), so threads borrowing and returning objects
+ * do not compete for the same memory location.
+ */
 public class ObjectPoolMetricsImpl implements ObjectPool.Metrics {
 
     private final long created = System.currentTimeMillis();
 
-    private final AtomicLong borrowedCounter = new AtomicLong();
-    private final AtomicLong borrowedDuration = new AtomicLong();
+    private final LongAdder borrowedCounter = new LongAdder();
+    private final LongAdder borrowedDuration = new LongAdder();
 
-    private final AtomicLong releasedCounter = new AtomicLong();
-    private final AtomicLong releasedDuration = new AtomicLong();
+    private final LongAdder releasedCounter = new LongAdder();
+    private final LongAdder releasedDuration = new LongAdder();
+
+    private final LongAdder createdCounter = new LongAdder();
+    private final LongAdder creationFailureCounter = new LongAdder();
+
+    private final LongAdder abandonedCounter = new LongAdder();
+    private final LongAdder validationFailureCounter = new LongAdder();
+    private final LongAdder retiredCounter = new LongAdder();
+
+    private volatile int warmUpCount;
+    private final AtomicInteger warmedUpCounter = new AtomicInteger();
+
+    private volatile int targetSize;
+    private volatile float arrivalRate;
+    private volatile float demand;
+    private final LongAdder resizeCounter = new LongAdder();
+
+    private final LatencyHistogram.Recorder borrowWaitHistogram = LatencyHistogram.create();
+    private final LatencyHistogram.Recorder holdTimeHistogram = LatencyHistogram.create();
+    private final LatencyHistogram.Recorder creationHistogram = LatencyHistogram.create();
+    private final LatencyHistogram.Recorder activationHistogram = LatencyHistogram.create();
+    private final LatencyHistogram.Recorder deactivationHistogram = LatencyHistogram.create();
 
     @Override
     public ZonedDateTime getCreatedTime() {
@@ -24,34 +52,169 @@ public class ObjectPoolMetricsImpl implements ObjectPool.Metrics {
 
     @Override
     public long getReleasedCount() {
-        return releasedCounter.get();
+        return releasedCounter.sum();
     }
 
     @Override
     public Duration getReleasedDuration() {
-        return ofNanos(releasedDuration.get());
+        return ofNanos(releasedDuration.sum());
     }
 
     @Override
     public long getBorrowedCount() {
-        return borrowedCounter.get();
+        return borrowedCounter.sum();
     }
 
     @Override
     public Duration getBorrowedDuration() {
-        return ofNanos(borrowedDuration.get());
+        return ofNanos(borrowedDuration.sum());
+    }
+
+    @Override
+    public long getCreatedCount() {
+        return createdCounter.sum();
+    }
+
+    @Override
+    public long getCreationFailureCount() {
+        return creationFailureCounter.sum();
+    }
+
+    @Override
+    public long getAbandonedCount() {
+        return abandonedCounter.sum();
+    }
+
+    @Override
+    public long getValidationFailureCount() {
+        return validationFailureCounter.sum();
+    }
+
+    @Override
+    public long getRetiredCount() {
+        return retiredCounter.sum();
+    }
+
+    @Override
+    public float getWarmUpProgress() {
+        int count = warmUpCount;
+        return count == 0 ? 1 : Math.min(1, (float) warmedUpCounter.get() / count);
+    }
+
+    @Override
+    public LatencyHistogram getBorrowWaitHistogram() {
+        return borrowWaitHistogram;
+    }
+
+    @Override
+    public LatencyHistogram getHoldTimeHistogram() {
+        return holdTimeHistogram;
+    }
+
+    @Override
+    public LatencyHistogram getCreationHistogram() {
+        return creationHistogram;
+    }
+
+    @Override
+    public LatencyHistogram getActivationHistogram() {
+        return activationHistogram;
+    }
+
+    @Override
+    public LatencyHistogram getDeactivationHistogram() {
+        return deactivationHistogram;
+    }
+
+    @Override
+    public int getTargetSize() {
+        return targetSize;
+    }
+
+    @Override
+    public float getArrivalRate() {
+        return arrivalRate;
+    }
+
+    @Override
+    public float getDemand() {
+        return demand;
+    }
+
+    @Override
+    public long getResizeCount() {
+        return resizeCounter.sum();
+    }
+
+    void updateBorrowCount() {
+        borrowedCounter.increment();
     }
 
     void updateBorrowedDuration(long duration) {
-        borrowedDuration.addAndGet(duration);
-        borrowedCounter.incrementAndGet();
+        borrowedDuration.add(duration);
+        holdTimeHistogram.record(duration);
     }
 
     void updateReleaseCount() {
-        releasedCounter.incrementAndGet();
+        releasedCounter.increment();
     }
 
     void updateReleaseDuration(long duration) {
-        releasedDuration.addAndGet(duration);
+        releasedDuration.add(duration);
+    }
+
+    void updateCreatedCount() {
+        createdCounter.increment();
+    }
+
+    void updateCreationFailureCount() {
+        creationFailureCounter.increment();
+    }
+
+    void updateAbandonedCount() {
+        abandonedCounter.increment();
+    }
+
+    void updateValidationFailureCount() {
+        validationFailureCounter.increment();
+    }
+
+    void updateRetiredCount() {
+        retiredCounter.increment();
+    }
+
+    void updateWarmUpCount(int count) {
+        warmUpCount = count;
+    }
+
+    void updateWarmedUpCount() {
+        warmedUpCounter.incrementAndGet();
+    }
+
+    void updateBorrowWait(long duration) {
+        borrowWaitHistogram.record(duration);
+    }
+
+    void updateCreationDuration(long duration) {
+        creationHistogram.record(duration);
+    }
+
+    void updateActivationDuration(long duration) {
+        activationHistogram.record(duration);
+    }
+
+    void updateDeactivationDuration(long duration) {
+        deactivationHistogram.record(duration);
+    }
+
+    void updateTargetSize(int targetSize) {
+        this.targetSize = targetSize;
+    }
+
+    void updateAutoSizing(int targetSize, float arrivalRate, float demand) {
+        if (targetSize != this.targetSize) resizeCounter.increment();
+        this.targetSize = targetSize;
+        this.arrivalRate = arrivalRate;
+        this.demand = demand;
     }
 }
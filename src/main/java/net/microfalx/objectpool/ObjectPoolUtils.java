@@ -4,9 +4,19 @@ import net.microfalx.lang.FormatterUtils;
 import net.microfalx.lang.ObjectUtils;
 import net.microfalx.metrics.Metrics;
 
+import java.lang.reflect.Method;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.time.ZoneId.systemDefault;
 import static net.microfalx.lang.ExceptionUtils.getRootCauseDescription;
@@ -18,11 +28,89 @@ public class ObjectPoolUtils {
      */
     public static final int MAXIMUM_POOL_SIZE = 1024 * 1024;
 
+    /**
+     * The default maximum number of objects created in parallel by a pool
+     */
+    public static final int DEFAULT_CREATION_CONCURRENCY = Math.max(4, Runtime.getRuntime().availableProcessors());
+
     /**
      * Holds all metrics related to object pool
      */
     protected static Metrics METRICS = Metrics.of("Object Pool");
 
+    private static volatile ScheduledExecutorService EXECUTOR;
+
+    private static final Method VIRTUAL_THREAD_FACTORY = getVirtualThreadFactory();
+
+    /**
+     * Returns the executor used for maintenance tasks by pools which were not configured with an executor.
+     * <p>
+     * The executor uses daemon threads and it is shared by all pools.
+     *
+     * @return a non-null instance
+     */
+    public static ScheduledExecutorService getDefaultExecutor() {
+        if (EXECUTOR == null) {
+            synchronized (ObjectPoolUtils.class) {
+                if (EXECUTOR == null) {
+                    int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+                    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads,
+                            new DaemonThreadFactory("Object Pool Maintenance"));
+                    executor.setRemoveOnCancelPolicy(true);
+                    EXECUTOR = executor;
+                }
+            }
+        }
+        return EXECUTOR;
+    }
+
+    /**
+     * Returns whether the JVM supports virtual threads.
+     *
+     * @return {@code true} if virtual threads are supported, {@code false} otherwise
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * Creates an executor which runs factory work (object creation) for a pool.
+     * <p>
+     * The executor uses at most the given number of daemon threads, which are stopped when idle; tasks submitted while
+     * all threads are busy are queued.
+     *
+     * @param name    the prefix of the thread names
+     * @param threads the maximum number of threads
+     * @return a non-null instance
+     */
+    public static ExecutorService createFactoryExecutor(String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new DaemonThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates an executor which runs each task in a new virtual thread.
+     *
+     * @param name the prefix of the thread names
+     * @return a non-null instance
+     * @throws ObjectPoolException if the JVM does not support virtual threads
+     */
+    public static ExecutorService createVirtualThreadExecutor(String name) {
+        if (!isVirtualThreadSupported()) throw new ObjectPoolException("Virtual threads are not supported by this JVM");
+        try {
+            Class<?> builderClass = VIRTUAL_THREAD_FACTORY.getDeclaringClass();
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + " ", 1L);
+            ThreadFactory threadFactory = (ThreadFactory) VIRTUAL_THREAD_FACTORY.invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new ObjectPoolException("Failed to create a virtual thread executor", e);
+        }
+    }
+
     /**
      * Returns a zoned date/time if the instant seems to be set ( any value > 0).
      *
@@ -69,4 +157,38 @@ public class ObjectPoolUtils {
         return new ObjectPoolException("Failed to borrow " + type + " from pool '" + ObjectUtils.getDescription(pool)
                 + "' within the expected timeout (" + timeOut + ")", throwable);
     }
+
+    /**
+     * Returns the method which creates the factory of virtual threads (available since Java 21), looked up by
+     * reflection since the library does not require Java 21.
+     *
+     * @return the method, null if virtual threads are not supported
+     */
+    private static Method getVirtualThreadFactory() {
+        try {
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            // virtual threads are a preview feature before Java 21
+            Thread.class.getMethod("ofVirtual").invoke(null);
+            return factory;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger(1);
+
+        private DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + " " + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -8,6 +8,7 @@ import java.util.concurrent.ScheduledExecutorService;
 
 import static java.time.Duration.ofMinutes;
 import static java.time.Duration.ofSeconds;
+import static net.microfalx.lang.ArgumentUtils.requireNonNull;
 
 /**
  * Implementation of {@link ObjectPool.Options}.
@@ -19,22 +20,111 @@ public class OptionsImpl<T> extends NamedAndTaggedIdentifyAware<String> implemen
     int minimum;
     int maximum = 10;
     Duration timeToLiveTimeout = ofMinutes(60);
-    Duration abandonedTimeout = ofMinutes(60);
+    Duration abandonedTimeout = Duration.ZERO;
     Duration inactiveTimeout = ofSeconds(60);
     Duration connectionTimeout = ofSeconds(10);
     Duration maximumWait = ofSeconds(60);
-    Duration maximumReuseTime = ofMinutes(15);
+    Duration maximumReuseTime = Duration.ZERO;
     int maximumReuseCount = Integer.MAX_VALUE;
+    int creationConcurrency = ObjectPoolUtils.DEFAULT_CREATION_CONCURRENCY;
+    Duration maintenanceInterval = ofSeconds(5);
+    Duration healthCheckInterval = Duration.ZERO;
+    int healthCheckFailureThreshold = 3;
+    Duration autoSizingInterval = Duration.ZERO;
+    ObjectPool.Budget budget;
+    int warmUpCount;
+    Duration warmUpTimeout = Duration.ZERO;
+    boolean testOnBorrow;
+    boolean testOnReturn;
+    boolean testWhileIdle;
+    Duration validationInterval = ofSeconds(30);
+    float validationSamplingRate = 1;
+    int validationBatchSize = 8;
+    boolean virtualThreads;
     ObjectPool.Strategy strategy = ObjectPool.Strategy.LIFO;
     ScheduledExecutorService executor;
     ObjectFactory<T> factory;
     List<ObjectPool.Node> nodes = new ArrayList<>();
+    ObjectPool.NodeSelection nodeSelection = ObjectPool.NodeSelection.POWER_OF_TWO_CHOICES;
 
     public OptionsImpl() {
         setId(UUID.randomUUID().toString());
         setName("Unnamed");
     }
 
+    /**
+     * Creates the options of the pool which serves one of the nodes.
+     * <p>
+     * The number of objects is divided between nodes, every node being able to hold at least one object.
+     *
+     * @param index the index of the node
+     * @return a non-null instance
+     */
+    OptionsImpl<T> forNode(int index) {
+        ObjectPool.Node node = nodes.get(index);
+        int count = nodes.size();
+        OptionsImpl<T> options = copy(getId() + "#" + index, getName() + " (" + node.getName() + ")", factory);
+        options.minimum = share(minimum, index, count);
+        options.maximum = Math.max(1, share(maximum, index, count));
+        options.warmUpCount = share(getWarmUpCount(), index, count);
+        options.nodes.add(node);
+        return options;
+    }
+
+    /**
+     * Creates the options of the pool which serves one of the keys of a keyed pool.
+     *
+     * @param key     the key
+     * @param factory the factory which creates objects for the key
+     * @return a non-null instance
+     */
+    OptionsImpl<T> forKey(Object key, ObjectFactory<T> factory) {
+        requireNonNull(factory);
+        OptionsImpl<T> options = copy(getId() + "#" + key, getName() + " (" + key + ")", factory);
+        options.nodes.addAll(nodes);
+        return options;
+    }
+
+    private OptionsImpl<T> copy(String id, String name, ObjectFactory<T> factory) {
+        OptionsImpl<T> options = new OptionsImpl<>();
+        options.setId(id);
+        options.setName(name);
+        options.setDescription(getDescription());
+        options.minimum = minimum;
+        options.maximum = maximum;
+        options.timeToLiveTimeout = timeToLiveTimeout;
+        options.abandonedTimeout = abandonedTimeout;
+        options.inactiveTimeout = inactiveTimeout;
+        options.connectionTimeout = connectionTimeout;
+        options.maximumWait = maximumWait;
+        options.maximumReuseTime = maximumReuseTime;
+        options.maximumReuseCount = maximumReuseCount;
+        options.creationConcurrency = creationConcurrency;
+        options.maintenanceInterval = maintenanceInterval;
+        options.healthCheckInterval = healthCheckInterval;
+        options.healthCheckFailureThreshold = healthCheckFailureThreshold;
+        options.autoSizingInterval = autoSizingInterval;
+        options.budget = budget;
+        options.warmUpCount = warmUpCount;
+        options.warmUpTimeout = warmUpTimeout;
+        options.testOnBorrow = testOnBorrow;
+        options.testOnReturn = testOnReturn;
+        options.testWhileIdle = testWhileIdle;
+        options.validationInterval = validationInterval;
+        options.validationSamplingRate = validationSamplingRate;
+        options.validationBatchSize = validationBatchSize;
+        options.virtualThreads = virtualThreads;
+        options.strategy = strategy;
+        options.executor = executor;
+        options.factory = factory;
+        options.nodeSelection = nodeSelection;
+        return options;
+    }
+
+    private static int share(int value, int index, int count) {
+        return value / count + (index < value % count ? 1 : 0);
+    }
+
     void updateId(String id) {
         setId(id);
     }
@@ -52,6 +142,11 @@ public class OptionsImpl<T> extends NamedAndTaggedIdentifyAware<String> implemen
         return Collections.unmodifiableList(nodes);
     }
 
+    @Override
+    public final ObjectPool.NodeSelection getNodeSelection() {
+        return nodeSelection;
+    }
+
     @Override
     public final int getMinimum() {
         return minimum;
@@ -97,6 +192,81 @@ public class OptionsImpl<T> extends NamedAndTaggedIdentifyAware<String> implemen
         return maximumReuseCount;
     }
 
+    @Override
+    public final int getCreationConcurrency() {
+        return creationConcurrency;
+    }
+
+    @Override
+    public final Duration getMaintenanceInterval() {
+        return maintenanceInterval;
+    }
+
+    @Override
+    public final Duration getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    @Override
+    public final int getHealthCheckFailureThreshold() {
+        return healthCheckFailureThreshold;
+    }
+
+    @Override
+    public final Duration getAutoSizingInterval() {
+        return autoSizingInterval;
+    }
+
+    @Override
+    public final ObjectPool.Budget getBudget() {
+        return budget;
+    }
+
+    @Override
+    public final int getWarmUpCount() {
+        return warmUpCount < 0 ? minimum : warmUpCount;
+    }
+
+    @Override
+    public final Duration getWarmUpTimeout() {
+        return warmUpTimeout;
+    }
+
+    @Override
+    public final boolean isTestOnBorrow() {
+        return testOnBorrow;
+    }
+
+    @Override
+    public final boolean isTestOnReturn() {
+        return testOnReturn;
+    }
+
+    @Override
+    public final boolean isTestWhileIdle() {
+        return testWhileIdle;
+    }
+
+    @Override
+    public final Duration getValidationInterval() {
+        return validationInterval;
+    }
+
+    @Override
+    public final float getValidationSamplingRate() {
+        return validationSamplingRate;
+    }
+
+    @Override
+    public final int getValidationBatchSize() {
+        return validationBatchSize;
+    }
+
+    @Override
+    public final boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
     @Override
     public final ObjectPool.Strategy getStrategy() {
         return strategy;
@@ -123,7 +293,23 @@ public class OptionsImpl<T> extends NamedAndTaggedIdentifyAware<String> implemen
                 .add("maximumWait=" + maximumWait)
                 .add("maximumReuseTime=" + maximumReuseTime)
                 .add("maximumReuseCount=" + maximumReuseCount)
+                .add("creationConcurrency=" + creationConcurrency)
+                .add("maintenanceInterval=" + maintenanceInterval)
+                .add("healthCheckInterval=" + healthCheckInterval)
+                .add("healthCheckFailureThreshold=" + healthCheckFailureThreshold)
+                .add("autoSizingInterval=" + autoSizingInterval)
+                .add("budget=" + budget)
+                .add("warmUpCount=" + getWarmUpCount())
+                .add("warmUpTimeout=" + warmUpTimeout)
+                .add("testOnBorrow=" + testOnBorrow)
+                .add("testOnReturn=" + testOnReturn)
+                .add("testWhileIdle=" + testWhileIdle)
+                .add("validationInterval=" + validationInterval)
+                .add("validationSamplingRate=" + validationSamplingRate)
+                .add("validationBatchSize=" + validationBatchSize)
+                .add("virtualThreads=" + virtualThreads)
                 .add("strategy=" + strategy)
+                .add("nodeSelection=" + nodeSelection)
                 .add("factory=" + factory)
                 .add("executor=" + executor)
                 .toString();
@@ -2,32 +2,78 @@ package net.microfalx.objectpool;
 
 import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import static net.microfalx.lang.ArgumentUtils.requireNonNull;
 
 
 /**
  * Implementation of {@link  PooledObject}.
+ * <p>
+ * The state changes with compare-and-set and only along the transitions below, so two threads can never claim
+ * the same object and an object cannot be returned twice:
+ * <ul>
+ *     <li>{@code IDLE} to {@code ACTIVE} (borrow), {@code VALIDATION} or {@code DESTROYING}</li>
+ *     <li>{@code ACTIVE} to {@code RETURNING}, {@code VALIDATION} (validation on borrow), {@code ABANDONED},
+ *     {@code DESTROYING} or back to {@code IDLE} (claimed by a borrower but not handed out)</li>
+ *     <li>{@code RETURNING} to {@code IDLE}, {@code VALIDATION} or {@code DESTROYING}</li>
+ *     <li>{@code VALIDATION} back to the state before validation or to {@code DESTROYING}</li>
+ *     <li>{@code ABANDONED} to {@code DESTROYING}</li>
+ *     <li>{@code DESTROYING} to {@code DESTROYED}</li>
+ * </ul>
  *
  * @param <T> the type of pooled objects
  */
 final class PooledObjectImpl<T> implements PooledObject<T> {
 
+    private static final AtomicReferenceFieldUpdater<PooledObjectImpl, State> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(PooledObjectImpl.class, State.class, "state");
+    private static final int[] TRANSITIONS = new int[State.values().length];
+
+    static {
+        allow(State.IDLE, State.ACTIVE, State.VALIDATION, State.DESTROYING);
+        allow(State.ACTIVE, State.IDLE, State.RETURNING, State.VALIDATION, State.ABANDONED, State.DESTROYING);
+        allow(State.RETURNING, State.IDLE, State.VALIDATION, State.DESTROYING);
+        allow(State.VALIDATION, State.IDLE, State.ACTIVE, State.RETURNING, State.DESTROYING);
+        allow(State.ABANDONED, State.DESTROYING);
+        allow(State.DESTROYING, State.DESTROYED);
+    }
+
     private final String id = UUID.randomUUID().toString();
     private final ObjectPool<T> owner;
     private final T object;
     private final PooledObjectMetricsImpl metrics;
-    private final ReentrantLock lock = new ReentrantLock();
+    private final StateCounters stateCounters;
+    private final AtomicBoolean available = new AtomicBoolean();
+    private int slot = -1;
 
     private volatile State state = State.IDLE;
+    private volatile long lastValidated = System.nanoTime();
+    private volatile long borrowTime;
+    private volatile long retireTime = Long.MAX_VALUE;
+    private volatile long retireBorrowCount = Long.MAX_VALUE;
 
     PooledObjectImpl(ObjectPool<T> owner, T object) {
+        this(owner, object, new StateCounters());
+    }
+
+    /**
+     * Creates a pooled object which is counted by its pool.
+     *
+     * @param owner         the pool which owns the object
+     * @param object        the object
+     * @param stateCounters the counters of the pool, updated every time the object changes its state
+     */
+    PooledObjectImpl(ObjectPool<T> owner, T object, StateCounters stateCounters) {
         requireNonNull(owner);
         requireNonNull(object);
+        requireNonNull(stateCounters);
         this.owner = owner;
         this.object = object;
         this.metrics = new PooledObjectMetricsImpl();
+        this.stateCounters = stateCounters;
+        stateCounters.add(state);
     }
 
     @Override
@@ -56,12 +102,120 @@ final class PooledObjectImpl<T> implements PooledObject<T> {
     }
 
     @Override
-    public PooledObject.Metrics getMetrics() {
+    public PooledObjectMetricsImpl getMetrics() {
         return metrics;
     }
 
-    void changeState(State state) {
-        this.state = state;
+    /**
+     * Changes the state of the object, if the object is in the expected state.
+     *
+     * @param expectedState the state the object has to be in
+     * @param state         the new state
+     * @return {@code true} if the state was changed, {@code false} if the object is in another state or the
+     * transition is not allowed
+     */
+    boolean changeState(State expectedState, State state) {
+        if (!isAllowed(expectedState, state) || !STATE.compareAndSet(this, expectedState, state)) return false;
+        stateCounters.change(expectedState, state);
+        return true;
+    }
+
+    /**
+     * Changes the state of the object, regardless of its current state, if the transition is allowed.
+     *
+     * @param state the new state
+     * @return the previous state, null if the transition is not allowed from the current state
+     */
+    State changeState(State state) {
+        for (; ; ) {
+            State currentState = this.state;
+            if (!isAllowed(currentState, state)) return null;
+            if (STATE.compareAndSet(this, currentState, state)) {
+                stateCounters.change(currentState, state);
+                return currentState;
+            }
+        }
+    }
+
+    /**
+     * Returns when the object was validated last time (or created).
+     *
+     * @return the time, in {@link System#nanoTime()} units
+     */
+    long getLastValidated() {
+        return lastValidated;
+    }
+
+    void updateLastValidated() {
+        lastValidated = System.nanoTime();
+    }
+
+    /**
+     * Returns when the object was borrowed last time.
+     *
+     * @return the time, in {@link System#nanoTime()} units
+     */
+    long getBorrowTime() {
+        return borrowTime;
+    }
+
+    void updateBorrowTime(long borrowTime) {
+        this.borrowTime = borrowTime;
+    }
+
+    /**
+     * Changes when the object has to be retired from the pool.
+     *
+     * @param retireTime        the time, in {@link System#nanoTime()} units
+     * @param retireBorrowCount the number of borrows
+     */
+    void updateRetirement(long retireTime, long retireBorrowCount) {
+        this.retireTime = retireTime;
+        this.retireBorrowCount = retireBorrowCount;
+    }
+
+    /**
+     * Returns whether the object has to be retired from the pool.
+     *
+     * @param currentTime the time used as reference, in {@link System#nanoTime()} units
+     * @return {@code true} if the object has to be retired, {@code false} otherwise
+     */
+    boolean shouldRetire(long currentTime) {
+        return currentTime - retireTime >= 0 || metrics.getBorrowedCount() >= retireBorrowCount;
+    }
+
+    /**
+     * Returns the position of the object in the idle store which holds it.
+     *
+     * @return a non-negative position, -1 if the object is not held by a store which uses positions
+     */
+    int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Changes the position of the object in the idle store which holds it.
+     *
+     * @param slot the position, -1 to clear it
+     */
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * Marks the object as available to be claimed from an idle store.
+     */
+    void release() {
+        available.set(true);
+    }
+
+    /**
+     * Claims the object from an idle store.
+     *
+     * @return {@code true} if the object was available and it is now owned by the caller, {@code false} otherwise
+     */
+    boolean claim() {
+        return available.compareAndSet(true, false);
     }
 
     @Override
@@ -75,7 +229,13 @@ final class PooledObjectImpl<T> implements PooledObject<T> {
         return Objects.hashCode(id);
     }
 
-    ReentrantLock getLock() {
-        return lock;
+    private static boolean isAllowed(State from, State to) {
+        return (TRANSITIONS[from.ordinal()] & (1 << to.ordinal())) != 0;
+    }
+
+    private static void allow(State from, State... to) {
+        for (State state : to) {
+            TRANSITIONS[from.ordinal()] |= 1 << state.ordinal();
+        }
     }
 }
@@ -3,12 +3,17 @@ package net.microfalx.objectpool;
 import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicLong;
 
 import static java.time.Duration.ofNanos;
 import static net.microfalx.objectpool.ObjectPoolUtils.fromInstant;
 import static net.microfalx.objectpool.ObjectPoolUtils.optionalFromInstant;
 
+/**
+ * Implementation of {@link PooledObject.Metrics}.
+ * <p>
+ * The borrow counters are updated only by the thread which owns the object (the borrower, or the pool while the
+ * object is idle), so they are plain volatile fields which are never contended.
+ */
 public class PooledObjectMetricsImpl implements PooledObject.Metrics {
 
     private final long created = System.currentTimeMillis();
@@ -17,8 +22,8 @@ public class PooledObjectMetricsImpl implements PooledObject.Metrics {
     private volatile long lastReturned;
     private volatile long lastUsed;
 
-    private final AtomicLong borrowedCounter = new AtomicLong();
-    private final AtomicLong borrowedDuration = new AtomicLong();
+    private volatile long borrowedCounter;
+    private volatile long borrowedDuration;
 
     @Override
     public ZonedDateTime getCreatedTime() {
@@ -42,21 +47,29 @@ public class PooledObjectMetricsImpl implements PooledObject.Metrics {
 
     @Override
     public long getBorrowedCount() {
-        return borrowedCounter.get();
+        return borrowedCounter;
     }
 
     @Override
     public Duration getBorrowedDuration() {
-        return ofNanos(borrowedDuration.get());
+        return ofNanos(borrowedDuration);
+    }
+
+    long getLastBorrowedTimestamp() {
+        return lastBorrowed;
+    }
+
+    void updateLastBorrowed(long lastBorrowed) {
+        this.lastBorrowed = lastBorrowed;
     }
 
     void updateBorrowCount() {
         lastBorrowed = System.currentTimeMillis();
-        borrowedCounter.incrementAndGet();
+        borrowedCounter = borrowedCounter + 1;
     }
 
     void updateBorrowedDuration(long duration) {
-        borrowedDuration.addAndGet(duration);
+        borrowedDuration = borrowedDuration + duration;
     }
 
     void updateLastUsed(long lastUsed) {
@@ -0,0 +1,172 @@
+package net.microfalx.objectpool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static net.microfalx.lang.ArgumentUtils.requireBounded;
+
+/**
+ * A number of objects shared by several pools.
+ * <p>
+ * A pool reserves a unit of capacity before it creates an object and gives it back when the object is destroyed,
+ * on top of its own limits. When the capacity is exhausted, subclasses can reclaim capacity from the other pools
+ * (usually by destroying one of their idle objects).
+ * <p>
+ * A pool whose borrowers wait while the capacity is exhausted is remembered as the starving pool, and it is woken up
+ * when another pool holds an idle object (which the starving pool can reclaim) or when capacity is given back.
+ * The starving pool is served until its borrowers no longer wait, and only then subclasses are asked for the next
+ * starving pool, so returning objects does not visit all the pools.
+ */
+class SharedCapacity {
+
+    private static final int RECLAIM_ATTEMPTS = 3;
+
+    private final int maximum;
+    private final AtomicInteger used = new AtomicInteger();
+    private final AtomicReference<ObjectPoolImpl<?>> starving = new AtomicReference<>();
+
+    SharedCapacity(int maximum) {
+        this.maximum = requireBounded(maximum, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the number of objects which can be created by all pools.
+     *
+     * @return a positive integer
+     */
+    final int getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * Returns the number of objects created (or about to be created) by all pools.
+     *
+     * @return a positive integer
+     */
+    final int getUsed() {
+        return used.get();
+    }
+
+    /**
+     * Returns whether all the capacity is used.
+     *
+     * @return {@code true} if exhausted, {@code false} otherwise
+     */
+    final boolean isExhausted() {
+        return used.get() >= maximum;
+    }
+
+    /**
+     * Reserves capacity for a new object, reclaiming capacity from other pools if needed.
+     *
+     * @param pool the pool which creates the object
+     * @return {@code true} if the capacity was reserved, {@code false} if the capacity is exhausted
+     */
+    final boolean reserve(ObjectPoolImpl<?> pool) {
+        for (int attempt = 0; ; attempt++) {
+            int count = used.get();
+            if (count < maximum) {
+                if (used.compareAndSet(count, count + 1)) return true;
+            } else if (attempt >= RECLAIM_ATTEMPTS || !reclaim(pool)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Gives back the capacity of a destroyed object.
+     */
+    final void release() {
+        // the capacity becomes available after it was exhausted
+        if (used.getAndDecrement() >= maximum) signal(null);
+    }
+
+    /**
+     * Invoked when a borrower of a pool starts to wait while the capacity is exhausted.
+     *
+     * @param pool the pool
+     */
+    final void waiting(ObjectPoolImpl<?> pool) {
+        ObjectPoolImpl<?> starvingPool = starving.get();
+        if (starvingPool == pool) return;
+        if (starvingPool == null || !starvingPool.hasWaiters()) starving.compareAndSet(starvingPool, pool);
+    }
+
+    /**
+     * Invoked when a pool holds an idle object which nobody waits for, while the capacity is exhausted.
+     *
+     * @param pool the pool
+     */
+    final void idle(ObjectPoolImpl<?> pool) {
+        // a starving pool can reclaim the idle object
+        signal(pool);
+    }
+
+    /**
+     * Invoked when a pool starts to draw from this capacity.
+     *
+     * @param pool the pool
+     */
+    void attach(ObjectPoolImpl<?> pool) {
+        // subclasses can track the pools
+    }
+
+    /**
+     * Invoked when a pool stops to draw from this capacity (the pool is closed).
+     *
+     * @param pool the pool
+     */
+    void detach(ObjectPoolImpl<?> pool) {
+        starving.compareAndSet(pool, null);
+    }
+
+    /**
+     * Invoked when the capacity is exhausted, to make room for an object of a pool.
+     *
+     * @param pool the pool which needs capacity
+     * @return {@code true} if capacity was given back by another pool, {@code false} otherwise
+     */
+    boolean reclaim(ObjectPoolImpl<?> pool) {
+        return false;
+    }
+
+    /**
+     * Invoked when an object of a pool becomes idle (usually because it was returned).
+     * <p>
+     * Invoked on the return path of the pool, so subclasses must not block or allocate memory for each call.
+     *
+     * @param pool the pool
+     */
+    void used(ObjectPoolImpl<?> pool) {
+        // subclasses can track which pools were used recently
+    }
+
+    /**
+     * Returns the pool which should receive capacity, once the previous starving pool was served.
+     * <p>
+     * Invoked only when a pool waited for capacity, and its borrowers no longer wait.
+     *
+     * @param excludedPool the pool which cannot use the capacity, null if any pool can
+     * @return the pool, null if no pool waits for capacity
+     */
+    ObjectPoolImpl<?> findStarving(ObjectPoolImpl<?> excludedPool) {
+        return null;
+    }
+
+    /**
+     * Wakes up a borrower of the starving pool, which can reclaim the capacity.
+     *
+     * @param excludedPool the pool which cannot use the capacity, null if any pool can
+     */
+    private void signal(ObjectPoolImpl<?> excludedPool) {
+        ObjectPoolImpl<?> starvingPool = starving.get();
+        if (starvingPool == null) return;
+        if (starvingPool == excludedPool || !starvingPool.hasWaiters()) {
+            ObjectPoolImpl<?> nextPool = findStarving(excludedPool);
+            if (starvingPool.hasWaiters() && nextPool == null) return;
+            starving.compareAndSet(starvingPool, nextPool);
+            starvingPool = nextPool;
+        }
+        if (starvingPool != null) starvingPool.signalWaiter();
+    }
+}
@@ -0,0 +1,56 @@
+package net.microfalx.objectpool;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static net.microfalx.lang.ArgumentUtils.requireNonNull;
+
+/**
+ * Counts the pooled objects of a pool in each state.
+ * <p>
+ * The counters are updated every time an object changes its state, so the number of objects in a given state is
+ * available without visiting the objects. Destroyed objects are not part of the pool anymore and they are not
+ * counted.
+ */
+final class StateCounters {
+
+    private final LongAdder[] counters = new LongAdder[PooledObject.State.values().length];
+
+    StateCounters() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns the number of objects in a given state.
+     *
+     * @param state the state
+     * @return a positive integer
+     */
+    int get(PooledObject.State state) {
+        requireNonNull(state);
+        // a counter can be observed while a transition is half done
+        return (int) Math.max(0, counters[state.ordinal()].sum());
+    }
+
+    /**
+     * Counts a new object.
+     *
+     * @param state the state of the new object
+     */
+    void add(PooledObject.State state) {
+        if (state != PooledObject.State.DESTROYED) counters[state.ordinal()].increment();
+    }
+
+    /**
+     * Moves an object from a state to another.
+     *
+     * @param from the previous state
+     * @param to   the new state
+     */
+    void change(PooledObject.State from, PooledObject.State to) {
+        if (from == to) return;
+        add(to);
+        if (from != PooledObject.State.DESTROYED) counters[from.ordinal()].decrement();
+    }
+}
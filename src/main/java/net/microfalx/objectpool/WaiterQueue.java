@@ -0,0 +1,247 @@
+package net.microfalx.objectpool;
+
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A queue of borrowers waiting for an object to become available.
+ * <p>
+ * Returned objects are handed directly to the first waiter, which is woken up exactly once, when it receives the
+ * object or when it is signalled that it can create a new object. Waiters are served by priority (highest first),
+ * then by deadline (earliest first) and then in the order they started to wait. A waiter whose deadline passed is
+ * dropped when it reaches the head of the queue, without consuming the object or the signal.
+ * <p>
+ * A waiter is either a parked thread or a listener, which is notified (on the thread which wakes up the waiter)
+ * instead of unparking a thread. Listeners allow borrowers to wait without holding a thread.
+ *
+ * @param <T> the type of pooled objects
+ */
+final class WaiterQueue<T> {
+
+    private static final Comparator<Waiter<?>> ORDER = (first, second) -> {
+        if (first.priority != second.priority) return Integer.compare(second.priority, first.priority);
+        // deadlines are System.nanoTime() values, which can only be compared by their difference
+        long difference = first.deadline - second.deadline;
+        if (difference != 0) return difference < 0 ? -1 : 1;
+        return Long.compare(first.sequence, second.sequence);
+    };
+
+    private final NavigableSet<Waiter<T>> waiters = new ConcurrentSkipListSet<>(ORDER);
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Registers the current thread as a waiter.
+     *
+     * @param deadline the deadline, in {@link System#nanoTime()} units
+     * @param priority the priority, higher priorities are served first
+     * @return a non-null instance
+     */
+    Waiter<T> enqueue(long deadline, int priority) {
+        Waiter<T> waiter = new Waiter<>(Thread.currentThread(), null, deadline, priority, sequence.getAndIncrement());
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    /**
+     * Registers a listener as a waiter.
+     * <p>
+     * The listener is called exactly once, when the waiter receives an object or it is signalled, but not
+     * when the waiter is cancelled.
+     *
+     * @param listener the listener
+     * @param deadline the deadline, in {@link System#nanoTime()} units
+     * @param priority the priority, higher priorities are served first
+     * @return a non-null instance
+     */
+    Waiter<T> enqueue(Consumer<Waiter<T>> listener, long deadline, int priority) {
+        Waiter<T> waiter = new Waiter<>(null, listener, deadline, priority, sequence.getAndIncrement());
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    /**
+     * Returns whether there are borrowers waiting for objects.
+     *
+     * @return {@code true} if nobody waits, {@code false} otherwise
+     */
+    boolean isEmpty() {
+        return waiters.isEmpty();
+    }
+
+    /**
+     * Returns the number of borrowers waiting for objects.
+     * <p>
+     * The waiters are counted by walking the queue, so this is only meant for diagnostics.
+     *
+     * @return a positive integer
+     */
+    int size() {
+        return waiters.size();
+    }
+
+    /**
+     * Hands an object to the first waiter.
+     *
+     * @param object the pooled object
+     * @return {@code true} if a waiter took ownership of the object, {@code false} if nobody waits
+     */
+    boolean handoff(PooledObjectImpl<T> object) {
+        return wakeUp(object);
+    }
+
+    /**
+     * Wakes up the first waiter, without an object.
+     * <p>
+     * Used when the pool has capacity to create a new object.
+     */
+    void signal() {
+        wakeUp(Waiter.SIGNALLED);
+    }
+
+    /**
+     * Wakes up all waiters, without an object.
+     */
+    void signalAll() {
+        Waiter<T> waiter;
+        while ((waiter = waiters.pollFirst()) != null) {
+            waiter.complete(Waiter.SIGNALLED);
+        }
+    }
+
+    /**
+     * Cancels a waiter.
+     *
+     * @param waiter the waiter
+     * @return {@code true} if cancelled, {@code false} if the waiter was already woken up
+     */
+    boolean cancel(Waiter<T> waiter) {
+        if (waiter.cancel()) {
+            waiters.remove(waiter);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private boolean wakeUp(Object value) {
+        Waiter<T> waiter;
+        long currentTime = 0;
+        while ((waiter = waiters.pollFirst()) != null) {
+            if (currentTime == 0) currentTime = System.nanoTime();
+            if (currentTime - waiter.deadline >= 0) {
+                waiter.expire();
+            } else if (waiter.complete(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parks the current thread until the waiter is woken up or the deadline passes.
+     *
+     * @param waiter  the waiter registered by the current thread
+     * @param endTime the deadline, in {@link System#nanoTime()} units
+     * @return the object handed to the waiter, null if the waiter was signalled or timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    PooledObjectImpl<T> await(Waiter<T> waiter, long endTime) throws InterruptedException {
+        for (; ; ) {
+            if (waiter.isDone()) return waiter.get();
+            long remaining = endTime - System.nanoTime();
+            if (remaining <= 0) {
+                if (cancel(waiter)) return null;
+            } else if (Thread.interrupted()) {
+                if (cancel(waiter)) throw new InterruptedException();
+                Thread.currentThread().interrupt();
+            } else {
+                LockSupport.parkNanos(this, remaining);
+            }
+        }
+    }
+
+    /**
+     * A borrower waiting for an object.
+     *
+     * @param <T> the type of pooled objects
+     */
+    static final class Waiter<T> {
+
+        private static final Object WAITING = new Object();
+        private static final Object CANCELLED = new Object();
+        private static final Object SIGNALLED = new Object();
+
+        private final Thread thread;
+        private final Consumer<Waiter<T>> listener;
+        private final long deadline;
+        private final int priority;
+        private final long sequence;
+        private final AtomicReference<Object> result = new AtomicReference<>(WAITING);
+
+        private Waiter(Thread thread, Consumer<Waiter<T>> listener, long deadline, int priority, long sequence) {
+            this.thread = thread;
+            this.listener = listener;
+            this.deadline = deadline;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Returns whether the waiter was woken up.
+         *
+         * @return {@code true} if woken up (or cancelled), {@code false} if still waiting
+         */
+        boolean isDone() {
+            return result.get() != WAITING;
+        }
+
+        /**
+         * Returns whether the waiter was woken up without an object, because the pool can create a new one.
+         *
+         * @return {@code true} if signalled, {@code false} otherwise
+         */
+        boolean isSignalled() {
+            return result.get() == SIGNALLED;
+        }
+
+        /**
+         * Returns the object handed to this waiter.
+         *
+         * @return the pooled object, null if none was handed
+         */
+        @SuppressWarnings("unchecked")
+        PooledObjectImpl<T> get() {
+            Object value = result.get();
+            return value instanceof PooledObjectImpl ? (PooledObjectImpl<T>) value : null;
+        }
+
+        private boolean complete(Object value) {
+            if (result.compareAndSet(WAITING, value)) {
+                if (listener != null) {
+                    listener.accept(this);
+                } else {
+                    LockSupport.unpark(thread);
+                }
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        private boolean cancel() {
+            return result.compareAndSet(WAITING, CANCELLED);
+        }
+
+        /**
+         * Cancels a waiter whose deadline passed, waking up its thread (listeners time out on their own).
+         */
+        private void expire() {
+            if (cancel() && thread != null) LockSupport.unpark(thread);
+        }
+    }
+}
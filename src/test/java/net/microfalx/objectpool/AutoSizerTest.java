@@ -0,0 +1,76 @@
+package net.microfalx.objectpool;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AutoSizerTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final ObjectPoolMetricsImpl metrics = new ObjectPoolMetricsImpl();
+
+    @Test
+    void startsFromMaximum() {
+        AutoSizer autoSizer = new AutoSizer(metrics, 0, 20, 0);
+        assertEquals(20, autoSizer.getTarget());
+        assertEquals(20, metrics.getTargetSize());
+    }
+
+    @Test
+    void shrinkSlowly() {
+        AutoSizer autoSizer = new AutoSizer(metrics, 2, 20, 0);
+        assertEquals(18, autoSizer.resize(SECOND, 0, false));
+        assertEquals(17, autoSizer.resize(2 * SECOND, 0, false));
+        for (int i = 3; i < 30; i++) {
+            autoSizer.resize(i * SECOND, 0, false);
+        }
+        assertEquals(2, autoSizer.getTarget());
+        assertEquals(17, metrics.getResizeCount());
+    }
+
+    @Test
+    void littlesLaw() {
+        AutoSizer autoSizer = new AutoSizer(metrics, 0, 100, 0);
+        borrowAndReturn(200, 50_000_000);
+        assertEquals(90, autoSizer.resize(2 * SECOND, 0, false));
+        assertEquals(100, metrics.getArrivalRate(), 0.01);
+        assertEquals(5, metrics.getDemand(), 0.01);
+        for (int i = 3; i < 40; i++) {
+            borrowAndReturn(100, 50_000_000);
+            autoSizer.resize(i * SECOND, 0, false);
+        }
+        assertEquals(7, autoSizer.getTarget());
+    }
+
+    @Test
+    void growWhenQueued() {
+        AutoSizer autoSizer = new AutoSizer(metrics, 1, 100, 0);
+        for (int i = 1; i < 100; i++) {
+            autoSizer.resize(i * SECOND, 0, false);
+        }
+        assertEquals(1, autoSizer.getTarget());
+        assertEquals(2, autoSizer.resize(100 * SECOND, 1, true));
+        assertEquals(4, autoSizer.resize(101 * SECOND, 2, true));
+        assertEquals(8, autoSizer.resize(102 * SECOND, 4, true));
+        assertEquals(10, autoSizer.resize(103 * SECOND, 8, false));
+    }
+
+    @Test
+    void growWhenBorrowersWait() {
+        AutoSizer autoSizer = new AutoSizer(metrics, 1, 100, 0);
+        for (int i = 1; i < 100; i++) {
+            autoSizer.resize(i * SECOND, 0, false);
+        }
+        metrics.updateBorrowWait(5_000_000);
+        assertEquals(2, autoSizer.resize(100 * SECOND, 0, false));
+    }
+
+    private void borrowAndReturn(int count, long holdTime) {
+        for (int i = 0; i < count; i++) {
+            metrics.updateBorrowCount();
+            metrics.updateReleaseCount();
+            metrics.updateBorrowedDuration(holdTime);
+        }
+    }
+}
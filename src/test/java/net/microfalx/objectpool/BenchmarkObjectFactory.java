@@ -0,0 +1,40 @@
+package net.microfalx.objectpool;
+
+/**
+ * A factory used by benchmarks, which creates objects without any cost.
+ */
+class BenchmarkObjectFactory implements ObjectFactory<Object> {
+
+    /**
+     * Creates a factory.
+     *
+     * @param activable {@code true} to create a factory which also activates and deactivates objects
+     * @return a non-null instance
+     */
+    static ObjectFactory<Object> create(boolean activable) {
+        return activable ? new Activable() : new BenchmarkObjectFactory();
+    }
+
+    @Override
+    public Object makeObject(ObjectPool<Object> pool) {
+        return new Object();
+    }
+
+    @Override
+    public void destroyObject(ObjectPool<Object> pool, Object object) {
+        // nothing to release
+    }
+
+    private static class Activable extends BenchmarkObjectFactory implements ActivableObjectFactory<Object> {
+
+        @Override
+        public void activateObject(ObjectPool<Object> pool, PooledObject<Object> object) {
+            // nothing to activate
+        }
+
+        @Override
+        public void deactivateObject(ObjectPool<Object> pool, PooledObject<Object> object) {
+            // nothing to deactivate
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package net.microfalx.objectpool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput and latency of borrow/return cycles, when the pool holds enough objects for all threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BorrowReturnBenchmark {
+
+    @Param({"LIFO", "FIFO", "THREAD_AFFINITY"})
+    private ObjectPool.Strategy strategy;
+
+    @Param({"64", "1024"})
+    private int size;
+
+    @Param({"false", "true"})
+    private boolean activable;
+
+    private ObjectPool<Object> pool;
+
+    @Setup
+    public void setup() {
+        pool = ObjectPool.create(BenchmarkObjectFactory.create(activable)).strategy(strategy).maximum(size)
+                .warmUp(size).warmUpTimeout(Duration.ofMinutes(1)).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object borrowAndReturn1Thread() {
+        return borrowAndReturn();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object borrowAndReturn4Threads() {
+        return borrowAndReturn();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object borrowAndReturn16Threads() {
+        return borrowAndReturn();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Object borrowAndReturnAllThreads() {
+        return borrowAndReturn();
+    }
+
+    private Object borrowAndReturn() {
+        Object object = pool.borrowObject();
+        pool.returnObject(object);
+        return object;
+    }
+}
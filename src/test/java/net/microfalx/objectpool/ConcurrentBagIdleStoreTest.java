@@ -0,0 +1,124 @@
+package net.microfalx.objectpool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentBagIdleStoreTest {
+
+    private ObjectPool<String> objectPool;
+    private ConcurrentBagIdleStore<String> store;
+
+    @BeforeEach
+    void before() {
+        objectPool = Mockito.mock(ObjectPool.class);
+        store = new ConcurrentBagIdleStore<>();
+    }
+
+    @Test
+    void addAndPoll() {
+        PooledObjectImpl<String> object = new PooledObjectImpl<>(objectPool, "Demo");
+        store.add(object);
+        store.offer(object);
+        assertSame(object, store.poll());
+        assertNull(store.poll());
+    }
+
+    @Test
+    void reclaimLastReturned() {
+        PooledObjectImpl<String> object1 = new PooledObjectImpl<>(objectPool, "Demo1");
+        PooledObjectImpl<String> object2 = new PooledObjectImpl<>(objectPool, "Demo2");
+        store.add(object1);
+        store.offer(object1);
+        store.add(object2);
+        store.offer(object2);
+        PooledObjectImpl<String> first = store.poll();
+        PooledObjectImpl<String> second = store.poll();
+        store.offer(second);
+        store.offer(first);
+        assertSame(first, store.poll());
+        assertSame(second, store.poll());
+    }
+
+    @Test
+    void remove() {
+        PooledObjectImpl<String> object = new PooledObjectImpl<>(objectPool, "Demo");
+        store.add(object);
+        store.offer(object);
+        store.remove(object);
+        assertNull(store.poll());
+    }
+
+    @Test
+    void reuseSlot() {
+        PooledObjectImpl<String> object1 = new PooledObjectImpl<>(objectPool, "Demo1");
+        PooledObjectImpl<String> object2 = new PooledObjectImpl<>(objectPool, "Demo2");
+        store.add(object1);
+        int slot = object1.getSlot();
+        store.remove(object1);
+        assertEquals(-1, object1.getSlot());
+        store.add(object2);
+        assertEquals(slot, object2.getSlot());
+        store.offer(object2);
+        assertSame(object2, store.poll());
+    }
+
+    @Test
+    void grow() {
+        List<PooledObjectImpl<String>> objects = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            PooledObjectImpl<String> object = new PooledObjectImpl<>(objectPool, "Demo" + i);
+            store.add(object);
+            store.offer(object);
+            objects.add(object);
+        }
+        Set<PooledObjectImpl<String>> polled = new HashSet<>();
+        PooledObjectImpl<String> object;
+        while ((object = store.poll()) != null) {
+            polled.add(object);
+        }
+        assertEquals(new HashSet<>(objects), polled);
+    }
+
+    @Test
+    void takeAndPoll() {
+        PooledObjectImpl<String> object1 = new PooledObjectImpl<>(objectPool, "Demo1");
+        PooledObjectImpl<String> object2 = new PooledObjectImpl<>(objectPool, "Demo2");
+        store.add(object1);
+        store.offer(object1);
+        store.add(object2);
+        store.offer(object2);
+        assertTrue(store.take(object1));
+        assertFalse(store.take(object1));
+        assertSame(object2, store.poll());
+        assertNull(store.poll());
+    }
+
+    @Test
+    void doesNotRetainObjectsAfterClose() throws InterruptedException {
+        WeakReference<PooledObjectImpl<String>> reference = offerAndForget();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (reference.get() != null && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+    }
+
+    private WeakReference<PooledObjectImpl<String>> offerAndForget() {
+        PooledObjectImpl<String> object = new PooledObjectImpl<>(objectPool, "Demo");
+        store.add(object);
+        store.offer(object);
+        // the pool is gone, but the test thread lives on
+        store = null;
+        return new WeakReference<>(object);
+    }
+}
@@ -0,0 +1,70 @@
+package net.microfalx.objectpool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DequeIdleStoreTest {
+
+    private ObjectPool<String> objectPool;
+
+    @BeforeEach
+    void before() {
+        objectPool = Mockito.mock(ObjectPool.class);
+    }
+
+    @Test
+    void lifo() {
+        DequeIdleStore<String> store = new DequeIdleStore<>(ObjectPool.Strategy.LIFO);
+        PooledObjectImpl<String> object1 = offer(store, "Demo1");
+        PooledObjectImpl<String> object2 = offer(store, "Demo2");
+        assertSame(object2, store.poll());
+        assertSame(object1, store.poll());
+        assertNull(store.poll());
+    }
+
+    @Test
+    void fifo() {
+        DequeIdleStore<String> store = new DequeIdleStore<>(ObjectPool.Strategy.FIFO);
+        PooledObjectImpl<String> object1 = offer(store, "Demo1");
+        PooledObjectImpl<String> object2 = offer(store, "Demo2");
+        assertSame(object1, store.poll());
+        assertSame(object2, store.poll());
+        assertNull(store.poll());
+    }
+
+    @Test
+    void remove() {
+        DequeIdleStore<String> store = new DequeIdleStore<>(ObjectPool.Strategy.LIFO);
+        PooledObjectImpl<String> object = offer(store, "Demo");
+        store.remove(object);
+        assertNull(store.poll());
+        assertFalse(store.take(object));
+    }
+
+    @Test
+    void skipDestroyed() {
+        DequeIdleStore<String> store = new DequeIdleStore<>(ObjectPool.Strategy.LIFO);
+        PooledObjectImpl<String> object1 = offer(store, "Demo1");
+        PooledObjectImpl<String> object2 = offer(store, "Demo2");
+        PooledObjectImpl<String> object3 = offer(store, "Demo3");
+        assertEquals(PooledObject.State.IDLE, object3.changeState(PooledObject.State.DESTROYING));
+        assertSame(object2, store.poll());
+        assertEquals(PooledObject.State.IDLE, object1.changeState(PooledObject.State.DESTROYING));
+        List<PooledObjectImpl<String>> objects = new ArrayList<>();
+        assertEquals(0, store.poll(objects, 2));
+        assertTrue(objects.isEmpty());
+    }
+
+    private PooledObjectImpl<String> offer(DequeIdleStore<String> store, String value) {
+        PooledObjectImpl<String> object = new PooledObjectImpl<>(objectPool, value);
+        store.add(object);
+        store.offer(object);
+        return object;
+    }
+}
@@ -0,0 +1,50 @@
+package net.microfalx.objectpool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of churn: every borrowed object is invalidated, so every borrow creates a new object.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvalidateBenchmark {
+
+    @Param({"LIFO", "THREAD_AFFINITY"})
+    private ObjectPool.Strategy strategy;
+
+    private ObjectPool<Object> pool;
+
+    @Setup
+    public void setup() {
+        pool = ObjectPool.create(BenchmarkObjectFactory.create(false)).strategy(strategy).maximum(64).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object borrowAndInvalidate1Thread() {
+        return borrowAndInvalidate();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object borrowAndInvalidate8Threads() {
+        return borrowAndInvalidate();
+    }
+
+    private Object borrowAndInvalidate() {
+        Object object = pool.borrowObject();
+        pool.invalidateObject(object);
+        return object;
+    }
+}
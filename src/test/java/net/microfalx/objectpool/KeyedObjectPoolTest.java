@@ -0,0 +1,206 @@
+package net.microfalx.objectpool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static java.time.Duration.ofMillis;
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyedObjectPoolTest {
+
+    private KeyObjectFactory factory;
+    private KeyedObjectPool<String, Integer> objectPool;
+
+    @BeforeEach
+    void setup() {
+        factory = new KeyObjectFactory();
+        objectPool = KeyedObjectPool.<String, Integer>create(key -> factory).name("Test")
+                .options(builder -> builder.maximum(2)).maximum(3)
+                .build();
+    }
+
+    @AfterEach
+    void cleanup() {
+        objectPool.close();
+    }
+
+    @Test
+    void create() {
+        assertEquals("Test", objectPool.getName());
+        assertEquals(3, objectPool.getMaximum());
+        assertEquals(2, objectPool.getOptions().getMaximum());
+        assertEquals(0, objectPool.getSize());
+        assertTrue(objectPool.getKeys().isEmpty());
+    }
+
+    @Test
+    void borrowAndReturn() {
+        Integer object = objectPool.borrowObject("a");
+        assertEquals("a", factory.keys.get(object));
+        assertEquals(1, objectPool.getSize("a"));
+        assertEquals(0, objectPool.getSize("b"));
+        objectPool.returnObject("a", object);
+        assertSame(object, objectPool.borrowObject("a"));
+        assertEquals(Set.of("a"), objectPool.getKeys());
+        assertFalse(ObjectPool.getPools().contains(objectPool.getPool("a")));
+        assertEquals("Test (a)", objectPool.getPool("a").getName());
+    }
+
+    @Test
+    void maximumPerKey() {
+        objectPool.close();
+        objectPool = KeyedObjectPool.<String, Integer>create(key -> factory)
+                .options(builder -> builder.maximum(2).maximumWait(ofMillis(100)))
+                .build();
+        objectPool.borrowObject("a");
+        objectPool.borrowObject("a");
+        assertThrows(ObjectPoolException.class, () -> objectPool.borrowObject("a"));
+        objectPool.borrowObject("b");
+        assertEquals(3, objectPool.getSize());
+    }
+
+    @Test
+    void maximumAcrossKeys() {
+        Integer object = objectPool.borrowObject("a");
+        objectPool.borrowObject("a");
+        objectPool.returnObject("a", object);
+        objectPool.borrowObject("b");
+        assertEquals(3, objectPool.getSize());
+        // the idle object of the key which was not used recently makes room for the new key
+        objectPool.borrowObject("c");
+        assertEquals(3, objectPool.getSize());
+        assertEquals(1, objectPool.getSize("a"));
+        assertEquals(1, objectPool.getSize("c"));
+    }
+
+    @Test
+    void reclaimColdestKey() {
+        objectPool.close();
+        objectPool = KeyedObjectPool.<String, Integer>create(key -> factory).maximum(2).build();
+        objectPool.returnObject("a", objectPool.borrowObject("a"));
+        objectPool.returnObject("b", objectPool.borrowObject("b"));
+        objectPool.borrowObject("c");
+        assertEquals(0, objectPool.getSize("a"));
+        assertEquals(1, objectPool.getSize("b"));
+        assertEquals(1, objectPool.getSize("c"));
+    }
+
+    @Test
+    void evictUnusedKeys() throws Exception {
+        objectPool.close();
+        objectPool = KeyedObjectPool.<String, Integer>create(key -> factory)
+                .options(builder -> builder.inactiveTimeout(ofMillis(10)).maintenanceInterval(ofMillis(10)))
+                .build();
+        ObjectPool<Integer> pool = objectPool.getPool("a");
+        objectPool.invalidateObject("a", objectPool.borrowObject("a"));
+        await(() -> !objectPool.getKeys().contains("a"));
+        assertTrue(pool.isClosed());
+        // the key gets a new pool
+        Integer object = objectPool.borrowObject("a");
+        assertEquals(1, objectPool.getSize("a"));
+        assertNotSame(pool, objectPool.getPool("a"));
+        objectPool.returnObject("a", object);
+    }
+
+    @Test
+    void budget() {
+        ObjectPool.Budget budget = ObjectPool.createBudget(2);
+        assertThrowsExactly(ObjectPoolException.class, () -> KeyedObjectPool.<String, Integer>create(key -> factory)
+                .options(builder -> builder.budget(budget)).build());
+    }
+
+    @Test
+    void waitForAnotherKey() throws Exception {
+        Integer object = objectPool.borrowObject("a");
+        objectPool.borrowObject("a");
+        objectPool.borrowObject("b");
+        CompletableFuture<Integer> future = CompletableFuture.supplyAsync(() -> objectPool.borrowObject("c"));
+        await(() -> objectPool.getKeys().contains("c")
+                && ((ObjectPoolImpl<Integer>) objectPool.getPool("c")).getWaiterCount() == 1);
+        assertFalse(future.isDone());
+        objectPool.returnObject("a", object);
+        assertNotNull(future.get(5, TimeUnit.SECONDS));
+        assertEquals(1, objectPool.getSize("c"));
+        assertEquals(3, objectPool.getSize());
+    }
+
+    @Test
+    void returnUnknownKey() {
+        Integer object = objectPool.borrowObject("a");
+        assertThrowsExactly(ObjectPoolException.class, () -> objectPool.returnObject("b", object));
+        objectPool.invalidateObject("a", object);
+        assertEquals(0, objectPool.getSize());
+    }
+
+    @Test
+    void sharedTasks() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        try {
+            objectPool.close();
+            objectPool = KeyedObjectPool.<String, Integer>create(key -> factory)
+                    .options(builder -> builder.executor(executor).healthCheckInterval(ofSeconds(30)))
+                    .build();
+            objectPool.borrowObject("a");
+            objectPool.borrowObject("b");
+            objectPool.borrowObject("c");
+            // one maintenance and one health check task for all keys
+            assertEquals(2, executor.getQueue().size());
+            objectPool.close();
+            assertEquals(0, executor.getQueue().size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void closePools() {
+        ObjectPool<Integer> pool = objectPool.getPool("a");
+        objectPool.borrowObject("a");
+        objectPool.close();
+        assertTrue(objectPool.isClosed());
+        assertTrue(pool.isClosed());
+        assertThrowsExactly(ObjectPoolException.class, () -> objectPool.borrowObject("b"));
+    }
+
+    /**
+     * Waits until a condition is met, and fails if it is not met within a few seconds.
+     */
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long endTime = System.nanoTime() + ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < endTime) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static class KeyObjectFactory implements ObjectFactory<Integer> {
+
+        private final AtomicInteger counter = new AtomicInteger(1);
+        private final Map<Integer, String> keys = new ConcurrentHashMap<>();
+
+        @Override
+        public Integer makeObject(ObjectPool<Integer> pool) {
+            Integer object = counter.getAndIncrement();
+            String name = pool.getName();
+            keys.put(object, name.substring(name.indexOf('(') + 1, name.indexOf(')')));
+            return object;
+        }
+
+        @Override
+        public void destroyObject(ObjectPool<Integer> pool, Integer object) {
+            keys.remove(object);
+        }
+    }
+}
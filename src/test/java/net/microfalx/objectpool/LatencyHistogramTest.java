@@ -0,0 +1,111 @@
+package net.microfalx.objectpool;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.time.Duration.ofMillis;
+import static java.time.Duration.ofNanos;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    private final LatencyHistogram.Recorder histogram = LatencyHistogram.create();
+
+    @Test
+    void buckets() {
+        for (long value = 0; value < 100_000; value++) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(index < LatencyHistogram.BUCKET_COUNT);
+            assertTrue(LatencyHistogram.highestValueOf(index) >= value);
+            assertTrue(LatencyHistogram.highestValueOf(index) <= value * 1.125 + 1);
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    void empty() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(Duration.ZERO, histogram.getMean());
+        assertEquals(Duration.ZERO, histogram.getP99());
+    }
+
+    @Test
+    void percentiles() {
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(ofMillis(i).toNanos());
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(ofMillis(1000), histogram.getMaximum());
+        assertEquals(ofNanos(ofMillis(1001).toNanos() / 2), histogram.getMean());
+        assertApproximately(ofMillis(500), histogram.getP50());
+        assertApproximately(ofMillis(990), histogram.getP99());
+        assertApproximately(ofMillis(999), histogram.getP999());
+        assertEquals(ofMillis(1000), histogram.getPercentile(100));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(101));
+    }
+
+    @Test
+    void intervalSnapshot() {
+        histogram.record(ofMillis(100).toNanos());
+        ObjectPool.Histogram interval = histogram.getIntervalSnapshot();
+        assertEquals(1, interval.getCount());
+        histogram.record(ofMillis(1).toNanos());
+        histogram.record(ofMillis(1).toNanos());
+        interval = histogram.getIntervalSnapshot();
+        assertEquals(2, interval.getCount());
+        assertApproximately(ofMillis(1), interval.getMaximum());
+        assertEquals(3, histogram.getCount());
+        assertEquals(0, histogram.getIntervalSnapshot().getCount());
+    }
+
+    @Test
+    void independentIntervals() {
+        LatencyHistogram.Interval interval = histogram.createInterval();
+        histogram.record(ofMillis(100).toNanos());
+        assertEquals(1, histogram.getIntervalSnapshot().getCount());
+        histogram.record(ofMillis(100).toNanos());
+        assertEquals(2, interval.next().getCount());
+        assertEquals(1, histogram.getIntervalSnapshot().getCount());
+        assertEquals(0, interval.next().getCount());
+    }
+
+    @Test
+    void sum() {
+        LatencyHistogram.Recorder other = LatencyHistogram.create();
+        histogram.record(10);
+        other.record(20);
+        other.record(30);
+        LatencyHistogram sum = LatencyHistogram.sum(List.of(histogram, other));
+        assertEquals(3, sum.getCount());
+        assertEquals(ofNanos(30), sum.getMaximum());
+        assertEquals(3, sum.getIntervalSnapshot().getCount());
+        other.record(40);
+        assertEquals(1, sum.getIntervalSnapshot().getCount());
+    }
+
+    @Test
+    void recordConcurrently() throws Exception {
+        CompletableFuture<?>[] recorders = new CompletableFuture[4];
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i] = CompletableFuture.runAsync(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    histogram.record(j);
+                }
+            });
+        }
+        CompletableFuture.allOf(recorders).get();
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(ofNanos(9_999), histogram.getMaximum());
+        // the buckets of all stripes are added up
+        assertEquals(40_000, histogram.getSnapshot().getCount());
+        assertEquals(ofNanos(4_999), histogram.getMean());
+    }
+
+    private static void assertApproximately(Duration expected, Duration actual) {
+        assertTrue(Math.abs(expected.toNanos() - actual.toNanos()) <= expected.toNanos() / 8,
+                "Expected " + expected + ", actual " + actual);
+    }
+}
@@ -0,0 +1,144 @@
+package net.microfalx.objectpool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiNodeObjectPoolTest {
+
+    private NodeObjectFactory factory;
+    private ObjectPool<Integer> objectPool;
+
+    @BeforeEach
+    void setup() {
+        factory = new NodeObjectFactory();
+        objectPool = ObjectPool.create(factory).maximum(4)
+                .node(URI.create("tcp://host1")).node(URI.create("tcp://host2"))
+                .build();
+    }
+
+    @Test
+    void create() {
+        assertInstanceOf(MultiNodeObjectPool.class, objectPool);
+        List<ObjectPool<Integer>> nodePools = ((MultiNodeObjectPool<Integer>) objectPool).getNodePools();
+        assertEquals(2, nodePools.size());
+        assertEquals(2, nodePools.get(0).getOptions().getMaximum());
+        assertEquals("host2", nodePools.get(1).getOptions().getNodes().get(0).getName());
+        assertTrue(ObjectPool.getPools().contains(objectPool));
+        assertFalse(ObjectPool.getPools().contains(nodePools.get(0)));
+    }
+
+    @Test
+    void spreadAcrossNodes() {
+        for (int i = 0; i < 4; i++) {
+            objectPool.borrowObject();
+        }
+        assertEquals(4, objectPool.getSize(PooledObject.State.ACTIVE));
+        assertEquals(2, countObjects("host1"));
+        assertEquals(2, countObjects("host2"));
+        assertSame(objectPool, factory.pool);
+    }
+
+    @Test
+    void leastActive() {
+        objectPool = ObjectPool.create(factory).maximum(4).nodeSelection(ObjectPool.NodeSelection.LEAST_ACTIVE)
+                .node(URI.create("tcp://host1")).node(URI.create("tcp://host2"))
+                .build();
+        Integer busyObject = objectPool.borrowObject();
+        String busyNode = factory.nodes.get(busyObject);
+        for (int i = 0; i < 10; i++) {
+            Integer object = objectPool.borrowObject();
+            assertNotEquals(busyNode, factory.nodes.get(object));
+            objectPool.returnObject(object);
+        }
+        objectPool.returnObject(busyObject);
+        assertEquals(2, objectPool.getSize(PooledObject.State.IDLE));
+    }
+
+    @Test
+    void failingNode() throws Exception {
+        for (ObjectPool.NodeSelection nodeSelection : ObjectPool.NodeSelection.values()) {
+            objectPool.close();
+            factory.failingNode = "host1";
+            objectPool = ObjectPool.create(factory).maximum(4).nodeSelection(nodeSelection)
+                    .node(URI.create("tcp://host1")).node(URI.create("tcp://host2"))
+                    .build();
+            for (int i = 0; i < 10; i++) {
+                Integer object = objectPool.borrowObject();
+                assertEquals("host2", factory.nodes.get(object));
+                objectPool.returnObject(object);
+            }
+            Integer object = objectPool.borrowObjectAsync().get(5, TimeUnit.SECONDS);
+            assertEquals("host2", factory.nodes.get(object));
+            objectPool.returnObject(object);
+            assertEquals(2, objectPool.borrowObjects(2, ofSeconds(1)).size());
+        }
+    }
+
+    @Test
+    void returnObjects() {
+        List<Integer> objects = List.of(objectPool.borrowObject(), objectPool.borrowObject());
+        objectPool.returnObjects(objects);
+        assertEquals(2, objectPool.getSize(PooledObject.State.IDLE));
+        assertEquals(2, objectPool.getMetrics().getBorrowedCount());
+        assertEquals(2, objectPool.borrowObjects(2, ofSeconds(1)).size());
+    }
+
+    @Test
+    void invalidateObject() {
+        Integer object = objectPool.borrowObject();
+        objectPool.invalidateObject(object);
+        assertEquals(0, objectPool.getSize());
+        assertThrowsExactly(ObjectPoolException.class, () -> objectPool.returnObject(1000));
+    }
+
+    @Test
+    void close() {
+        objectPool.borrowObject();
+        objectPool.close();
+        assertTrue(objectPool.isClosed());
+        assertEquals(0, objectPool.getSize());
+        assertFalse(ObjectPool.getPools().contains(objectPool));
+        assertThrowsExactly(ObjectPoolException.class, () -> objectPool.borrowObject());
+    }
+
+    private long countObjects(String node) {
+        return factory.nodes.values().stream().filter(node::equals).count();
+    }
+
+    private static class NodeObjectFactory implements ObjectFactory<Integer> {
+
+        private final AtomicInteger counter = new AtomicInteger(1);
+        private final Map<Integer, String> nodes = new ConcurrentHashMap<>();
+        private volatile ObjectPool<Integer> pool;
+        private volatile String failingNode;
+
+        @Override
+        public Integer makeObject(ObjectPool<Integer> pool) {
+            throw new IllegalStateException("A node is required");
+        }
+
+        @Override
+        public Integer makeObject(ObjectPool<Integer> pool, ObjectPool.Node node) {
+            this.pool = pool;
+            if (node.getName().equals(failingNode)) throw new IllegalStateException("Node is down");
+            Integer object = counter.getAndIncrement();
+            nodes.put(object, node.getName());
+            return object;
+        }
+
+        @Override
+        public void destroyObject(ObjectPool<Integer> pool, Integer object) {
+            // do nothing
+        }
+    }
+}
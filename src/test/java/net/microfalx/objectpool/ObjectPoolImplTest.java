@@ -1,23 +1,55 @@
 package net.microfalx.objectpool;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
 import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
+import static java.time.Duration.ofMillis;
 import static java.time.Duration.ofMinutes;
 import static java.time.Duration.ofSeconds;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 class ObjectPoolImplTest {
 
     private ObjectPool<Integer> objectPool;
+    private ExecutorService executor;
 
     @BeforeEach
     void setup() {
         objectPool = ObjectPool.create(new IntegerObjectFactory()).build();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void cleanup() {
+        executor.shutdownNow();
+        objectPool.close();
+        // pools replaced or created by a test
+        for (ObjectPool<?> pool : List.copyOf(ObjectPool.getPools())) {
+            pool.close();
+        }
     }
 
     @Test
@@ -31,11 +63,13 @@ class ObjectPoolImplTest {
         assertEquals(10, options.getMaximum());
         assertEquals(ObjectPool.Strategy.LIFO, options.getStrategy());
         assertEquals(ofMinutes(60), options.getTimeToLiveTimeout());
-        assertEquals(ofMinutes(60), options.getAbandonedTimeout());
+        assertEquals(Duration.ZERO, options.getAbandonedTimeout());
         assertEquals(ofSeconds(60), options.getInactiveTimeout());
         assertEquals(ofSeconds(60), options.getMaximumWait());
-        assertEquals(ofMinutes(15), options.getMaximumReuseTime());
+        assertEquals(Duration.ZERO, options.getMaximumReuseTime());
         assertEquals(Integer.MAX_VALUE, options.getMaximumReuseCount());
+        assertEquals(ObjectPoolUtils.DEFAULT_CREATION_CONCURRENCY, options.getCreationConcurrency());
+        assertEquals(Duration.ZERO, options.getHealthCheckInterval());
         assertNotNull(options.toString());
     }
 
@@ -67,10 +101,70 @@ class ObjectPoolImplTest {
     }
 
     @Test
-    void getMetrics() {
+    void invalidMaintenanceInterval() {
+        ObjectPool.Builder<Integer> builder = ObjectPool.create(new IntegerObjectFactory());
+        assertThrows(IllegalArgumentException.class, () -> builder.maintenanceInterval(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> builder.maintenanceInterval(ofMillis(-1)));
+        assertThrows(IllegalArgumentException.class, () -> builder.maintenanceInterval(Duration.ofNanos(1)));
+    }
+
+    @Test
+    void invalidHealthCheckInterval() {
+        ObjectPool.Builder<Integer> builder = ObjectPool.create(new IntegerObjectFactory());
+        assertThrows(IllegalArgumentException.class, () -> builder.healthCheckInterval(ofMillis(-1)));
+        assertThrows(IllegalArgumentException.class, () -> builder.healthCheckInterval(Duration.ofNanos(1)));
+        builder.healthCheckInterval(Duration.ZERO);
+        builder.healthCheckInterval(ofMillis(1));
+    }
+
+    @Test
+    void getMetrics() throws Exception {
         Integer object = objectPool.borrowObject();
         ObjectPool.Metrics metrics = objectPool.getMetrics();
         assertEquals(1, metrics.getBorrowedCount());
+        Thread.sleep(10);
+        objectPool.returnObject(object);
+        assertEquals(1, metrics.getReleasedCount());
+        assertTrue(metrics.getBorrowedDuration().toMillis() >= 10);
+        assertTrue(metrics.getReleasedDuration().toNanos() > 0);
+    }
+
+    @Test
+    void borrowAndReturnWithoutAllocations() {
+        // a few allocations per borrow would add up to megabytes, the bound only leaves room for the JIT and the JVM
+        long allocatedBytes = getAllocatedBytes(() -> borrowAndReturn(200_000));
+        assertTrue(allocatedBytes < 64 * 1024, "Allocated " + allocatedBytes + " bytes");
+    }
+
+    @Test
+    void getObjectMetrics() throws Exception {
+        Integer object = objectPool.borrowObject();
+        PooledObject.Metrics metrics = objectPool.getObjects().iterator().next().getMetrics();
+        assertEquals(1, metrics.getBorrowedCount());
+        assertTrue(metrics.getLastBorrowedTime().isPresent());
+        assertTrue(metrics.getLastReturnedTime().isEmpty());
+        Thread.sleep(10);
+        objectPool.returnObject(object);
+        assertTrue(metrics.getLastReturnedTime().isPresent());
+        assertTrue(metrics.getBorrowedDuration().toMillis() >= 10);
+        objectPool.returnObject(objectPool.borrowObject());
+        assertEquals(2, metrics.getBorrowedCount());
+    }
+
+    @Test
+    void getHistograms() throws Exception {
+        objectPool = ObjectPool.create(new IntegerObjectFactory(ofMillis(10))).build();
+        Integer object = objectPool.borrowObject();
+        Thread.sleep(20);
+        objectPool.returnObject(object);
+        ObjectPool.Metrics metrics = objectPool.getMetrics();
+        assertEquals(1, metrics.getBorrowWaitHistogram().getCount());
+        assertTrue(metrics.getBorrowWaitHistogram().getP50().toMillis() >= 8);
+        assertEquals(1, metrics.getCreationHistogram().getCount());
+        assertEquals(1, metrics.getHoldTimeHistogram().getCount());
+        assertTrue(metrics.getHoldTimeHistogram().getMaximum().toMillis() >= 20);
+        assertEquals(1, metrics.getActivationHistogram().getCount());
+        assertEquals(1, metrics.getDeactivationHistogram().getCount());
     }
 
     @Test
@@ -97,6 +191,594 @@ class ObjectPoolImplTest {
         assertEquals(1, objectPool.getSize(PooledObject.State.IDLE));
     }
 
+    @Test
+    void returnObjectTwice() {
+        Integer object = objectPool.borrowObject();
+        objectPool.returnObject(object);
+        assertThrowsExactly(ObjectPoolException.class, () -> objectPool.returnObject(object));
+        assertThrowsExactly(ObjectPoolException.class, () -> objectPool.returnObjects(List.of(object)));
+        assertEquals(1, objectPool.getSize(PooledObject.State.IDLE));
+        assertEquals(1, objectPool.getMetrics().getReleasedCount());
+        assertEquals(object, objectPool.borrowObject());
+        assertEquals(1, objectPool.getSize(PooledObject.State.ACTIVE));
+    }
+
+    @Test
+    void getObjectsByState() {
+        Integer object = objectPool.borrowObject();
+        objectPool.addObject();
+        Collection<PooledObject<Integer>> activeObjects = objectPool.getObjects(PooledObject.State.ACTIVE);
+        assertEquals(1, activeObjects.size());
+        assertSame(object, activeObjects.iterator().next().get());
+        List<PooledObject<Integer>> idleObjects = new ArrayList<>();
+        objectPool.forEachObject(PooledObject.State.IDLE, idleObjects::add);
+        assertEquals(1, idleObjects.size());
+        assertNotSame(object, idleObjects.get(0).get());
+        objectPool.returnObject(object);
+        assertTrue(activeObjects.isEmpty());
+        assertEquals(2, objectPool.getObjects(PooledObject.State.IDLE).size());
+        objectPool.invalidateObject(object);
+        assertEquals(1, objectPool.getSize(PooledObject.State.IDLE));
+        assertEquals(0, objectPool.getSize(PooledObject.State.DESTROYED));
+    }
+
+    @Test
+    void invalidateWhileWaiting() throws Exception {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximum(1).maximumWait(ofSeconds(10)).build();
+        for (int i = 0; i < 1000; i++) {
+            Integer object = objectPool.borrowObject();
+            CompletableFuture<Integer> syncBorrow = CompletableFuture.supplyAsync(objectPool::borrowObject, executor);
+            // the object is invalidated while the borrower is about to wait, the borrower creates a new object
+            spin(i % 50);
+            objectPool.invalidateObject(object);
+            Integer newObject = syncBorrow.get(1, TimeUnit.SECONDS);
+            CompletableFuture<Integer> asyncBorrow = objectPool.borrowObjectAsync();
+            spin(i % 50);
+            objectPool.invalidateObject(newObject);
+            objectPool.returnObject(asyncBorrow.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(1, objectPool.getSize());
+    }
+
+    @Test
+    void lease() {
+        Integer object;
+        try (ObjectPool.Lease<Integer> lease = objectPool.lease()) {
+            object = lease.get();
+            assertSame(object, lease.getPooledObject().get());
+            assertEquals(1, objectPool.getSize(PooledObject.State.ACTIVE));
+        }
+        assertEquals(1, objectPool.getSize(PooledObject.State.IDLE));
+        assertEquals(object, objectPool.borrowObject());
+    }
+
+    @Test
+    void leaseClosedTwice() {
+        ObjectPool.Lease<Integer> lease = objectPool.lease();
+        lease.close();
+        assertTrue(lease.isClosed());
+        ObjectPool.Lease<Integer> nextLease = objectPool.lease();
+        assertEquals(lease.get(), nextLease.get());
+        lease.close();
+        assertEquals(1, objectPool.getSize(PooledObject.State.ACTIVE));
+        nextLease.close();
+        assertEquals(1, objectPool.getSize(PooledObject.State.IDLE));
+    }
+
+    @Test
+    void leaseInvalidate() {
+        ObjectPool.Lease<Integer> lease = objectPool.lease();
+        lease.invalidate();
+        lease.close();
+        assertTrue(lease.isClosed());
+        assertEquals(0, objectPool.getSize());
+    }
+
+    @Test
+    void borrowObjects() {
+        List<Integer> objects = objectPool.borrowObjects(3, ofSeconds(1));
+        assertEquals(3, objects.size());
+        assertEquals(3, objectPool.getSize(PooledObject.State.ACTIVE));
+        assertEquals(3, objectPool.getMetrics().getBorrowedCount());
+        objectPool.returnObjects(objects);
+        assertEquals(3, objectPool.getSize(PooledObject.State.IDLE));
+        assertEquals(new HashSet<>(objects), new HashSet<>(objectPool.borrowObjects(3, ofSeconds(1))));
+    }
+
+    @Test
+    void borrowObjectsTimeout() {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximum(2).build();
+        Integer object = objectPool.borrowObject();
+        Assertions.assertThrowsExactly(ObjectPoolException.class, () -> objectPool.borrowObjects(2, ofMillis(50)));
+        assertEquals(1, objectPool.getSize(PooledObject.State.IDLE));
+        objectPool.returnObject(object);
+        assertEquals(2, objectPool.borrowObjects(2, ofMillis(50)).size());
+    }
+
+    @Test
+    void borrowObjectsConcurrently() throws Exception {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximum(4).build();
+        CompletableFuture<?>[] borrowers = new CompletableFuture[4];
+        for (int i = 0; i < borrowers.length; i++) {
+            borrowers[i] = CompletableFuture.runAsync(() -> {
+                for (int j = 0; j < 100; j++) {
+                    List<Integer> objects = objectPool.borrowObjects(3, ofSeconds(5));
+                    assertEquals(3, new HashSet<>(objects).size());
+                    objectPool.returnObjects(objects);
+                }
+            }, executor);
+        }
+        CompletableFuture.allOf(borrowers).get(10, TimeUnit.SECONDS);
+        assertTrue(objectPool.getSize() <= 4);
+        assertEquals(objectPool.getSize(), objectPool.getSize(PooledObject.State.IDLE));
+    }
+
+    @Test
+    void threadAffinity() {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).strategy(ObjectPool.Strategy.THREAD_AFFINITY).build();
+        Integer object1 = objectPool.borrowObject();
+        Integer object2 = objectPool.borrowObject();
+        objectPool.returnObject(object1);
+        objectPool.returnObject(object2);
+        assertEquals(object2, objectPool.borrowObject());
+        assertEquals(object1, objectPool.borrowObject());
+        assertEquals(2, objectPool.getSize(PooledObject.State.ACTIVE));
+    }
+
+    @Test
+    void borrowTimeout() {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximum(1).maximumWait(ofMillis(50)).build();
+        objectPool.borrowObject();
+        long startTime = System.nanoTime();
+        Assertions.assertThrowsExactly(ObjectPoolException.class, () -> objectPool.borrowObject());
+        assertTrue(System.nanoTime() - startTime >= ofMillis(50).toNanos());
+    }
+
+    @Test
+    void handoffToWaiter() throws Exception {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximum(1).build();
+        Integer object = objectPool.borrowObject();
+        CompletableFuture<Integer> waiter = CompletableFuture.supplyAsync(
+                () -> objectPool.borrowObject(), executor);
+        await(() -> getWaiterCount(objectPool) == 1);
+        objectPool.returnObject(object);
+        assertEquals(object, waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, objectPool.getSize(PooledObject.State.ACTIVE));
+    }
+
+    @Test
+    void borrowObjectAsync() throws Exception {
+        Integer object = objectPool.borrowObjectAsync().get(5, TimeUnit.SECONDS);
+        assertNotNull(object);
+        assertEquals(1, objectPool.getSize(PooledObject.State.ACTIVE));
+        objectPool.returnObject(object);
+        assertEquals(object, objectPool.borrowObjectAsync().get(5, TimeUnit.SECONDS));
+        assertEquals(2, objectPool.getMetrics().getBorrowedCount());
+    }
+
+    @Test
+    void borrowObjectAsyncHandoff() throws Exception {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximum(1).build();
+        Integer object = objectPool.borrowObject();
+        CompletableFuture<Integer> future = objectPool.borrowObjectAsync();
+        assertFalse(future.isDone());
+        objectPool.returnObject(object);
+        assertEquals(object, future.get(5, TimeUnit.SECONDS));
+        assertEquals(1, objectPool.getSize(PooledObject.State.ACTIVE));
+    }
+
+    @Test
+    void borrowObjectAsyncTimeout() {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximum(1).maximumWait(ofMillis(50)).build();
+        objectPool.borrowObject();
+        CompletableFuture<Integer> future = objectPool.borrowObjectAsync();
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertSame(ObjectPoolException.class, exception.getCause().getClass());
+    }
+
+    @Test
+    void borrowObjectAsyncCancel() {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximum(1).build();
+        Integer object = objectPool.borrowObject();
+        CompletableFuture<Integer> future = objectPool.borrowObjectAsync();
+        future.cancel(false);
+        objectPool.returnObject(object);
+        assertEquals(1, objectPool.getSize(PooledObject.State.IDLE));
+    }
+
+    @Test
+    void virtualThreads() throws Exception {
+        assumeTrue(ObjectPoolUtils.isVirtualThreadSupported());
+        objectPool = ObjectPool.create(new IntegerObjectFactory(ofMillis(10))).maximum(4).virtualThreads(true)
+                .warmUp(4).warmUpTimeout(ofSeconds(5)).build();
+        assertTrue(objectPool.getOptions().isVirtualThreads());
+        assertEquals(4, objectPool.getSize(PooledObject.State.IDLE));
+        ExecutorService borrowers = ObjectPoolUtils.createVirtualThreadExecutor("Borrower");
+        try {
+            Integer[] objects = new Integer[4];
+            for (int i = 0; i < objects.length; i++) {
+                objects[i] = objectPool.borrowObject();
+            }
+            AtomicInteger borrowedCount = new AtomicInteger();
+            CompletableFuture<?>[] futures = new CompletableFuture[5000];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = CompletableFuture.runAsync(() -> {
+                    Integer object = objectPool.borrowObject();
+                    borrowedCount.incrementAndGet();
+                    objectPool.returnObject(object);
+                }, borrowers);
+            }
+            await(() -> getWaiterCount(objectPool) == futures.length);
+            // the waiting borrowers do not pin the carrier threads, so other virtual threads can still run
+            CompletableFuture.runAsync(() -> {}, borrowers).get(5, TimeUnit.SECONDS);
+            assertEquals(0, borrowedCount.get());
+            for (Integer object : objects) {
+                objectPool.returnObject(object);
+            }
+            CompletableFuture.allOf(futures).get(30, TimeUnit.SECONDS);
+            assertEquals(futures.length, borrowedCount.get());
+            assertEquals(4, objectPool.getSize());
+        } finally {
+            borrowers.shutdownNow();
+        }
+    }
+
+    @Test
+    void virtualThreadSupport() {
+        int version = Runtime.version().feature();
+        // virtual threads are a preview feature in Java 19 and 20, available depending on the JVM flags
+        if (version >= 21) {
+            assertTrue(ObjectPoolUtils.isVirtualThreadSupported());
+        } else if (version < 19) {
+            assertFalse(ObjectPoolUtils.isVirtualThreadSupported());
+        }
+        if (!ObjectPoolUtils.isVirtualThreadSupported()) {
+            ObjectPool.Builder<Integer> builder = ObjectPool.create(new IntegerObjectFactory());
+            assertThrows(ObjectPoolException.class, () -> builder.virtualThreads(true));
+            assertThrows(ObjectPoolException.class, () -> ObjectPoolUtils.createVirtualThreadExecutor("Test"));
+            assertFalse(builder.virtualThreads(false).build().getOptions().isVirtualThreads());
+        }
+    }
+
+    @Test
+    void borrowCreatesOnCallerThread() {
+        IntegerObjectFactory factory = new IntegerObjectFactory();
+        objectPool = ObjectPool.create(factory).name("Caller Test").build();
+        objectPool.returnObject(objectPool.borrowObject());
+        assertEquals(Set.of(Thread.currentThread().getName()), factory.threads);
+    }
+
+    @Test
+    void createInParallel() throws Exception {
+        IntegerObjectFactory factory = new IntegerObjectFactory(4);
+        objectPool = ObjectPool.create(factory).maximum(4).build();
+        CompletableFuture<?>[] borrowers = new CompletableFuture[4];
+        for (int i = 0; i < borrowers.length; i++) {
+            borrowers[i] = CompletableFuture.runAsync(() -> objectPool.borrowObject(), executor);
+        }
+        CompletableFuture.allOf(borrowers).get(5, TimeUnit.SECONDS);
+        assertEquals(4, factory.maximumInFlight.get());
+        assertEquals(4, objectPool.getSize(PooledObject.State.ACTIVE));
+    }
+
+    @Test
+    void creationConcurrency() throws Exception {
+        IntegerObjectFactory factory = new IntegerObjectFactory(ofMillis(50));
+        objectPool = ObjectPool.create(factory).maximum(4).creationConcurrency(1).build();
+        assertEquals(1, objectPool.getOptions().getCreationConcurrency());
+        CompletableFuture<?>[] borrowers = new CompletableFuture[3];
+        for (int i = 0; i < borrowers.length; i++) {
+            borrowers[i] = CompletableFuture.runAsync(() -> objectPool.borrowObject(), executor);
+        }
+        CompletableFuture.allOf(borrowers).get(5, TimeUnit.SECONDS);
+        assertEquals(1, factory.maximumInFlight.get());
+        assertEquals(3, objectPool.getSize(PooledObject.State.ACTIVE));
+    }
+
+    @Test
+    void creationPermitTimeout() throws Exception {
+        IntegerObjectFactory factory = new IntegerObjectFactory(2);
+        objectPool = ObjectPool.create(factory).creationConcurrency(1).connectionTimeout(ofMillis(100)).build();
+        assertEquals(ofMillis(100), objectPool.getOptions().getConnectionTimeout());
+        CompletableFuture<?> creation = CompletableFuture.runAsync(() -> objectPool.addObject(), executor);
+        await(() -> factory.inFlight.get() == 1);
+        // gives up waiting for the creation permit while the first creation is in progress
+        objectPool.addObject();
+        assertFalse(creation.isDone());
+        assertEquals(1, factory.inFlight.get());
+        factory.inFlightLatch.countDown();
+        creation.get(5, TimeUnit.SECONDS);
+        assertEquals(1, objectPool.getSize());
+    }
+
+    @Test
+    void replenish() throws Exception {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).minimum(2).maintenanceInterval(ofMillis(20)).build();
+        awaitIdle(2);
+        Integer object = objectPool.borrowObject();
+        objectPool.invalidateObject(object);
+        awaitIdle(2);
+        assertEquals(2, objectPool.getSize());
+    }
+
+    @Test
+    void warmUp() {
+        IntegerObjectFactory factory = new IntegerObjectFactory(4);
+        objectPool = ObjectPool.create(factory).warmUp(4).warmUpTimeout(ofSeconds(5)).build();
+        assertTrue(objectPool.whenReady().isDone());
+        assertEquals(4, factory.maximumInFlight.get());
+        assertEquals(4, objectPool.getSize(PooledObject.State.IDLE));
+        assertEquals(4, objectPool.getMetrics().getCreatedCount());
+        assertEquals(1, objectPool.getMetrics().getWarmUpProgress(), 0);
+    }
+
+    @Test
+    void factoryThreads() throws Exception {
+        IntegerObjectFactory factory = new IntegerObjectFactory(ofMillis(200));
+        ScheduledExecutorService maintenanceExecutor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            objectPool = ObjectPool.create(factory).name("Factory Test").executor(maintenanceExecutor)
+                    .warmUp(2).build();
+            // slow factories do not hold the maintenance executor
+            maintenanceExecutor.submit(() -> assertFalse(objectPool.whenReady().isDone())).get(5, TimeUnit.SECONDS);
+            objectPool.whenReady().get(5, TimeUnit.SECONDS);
+            assertEquals(2, objectPool.getSize(PooledObject.State.IDLE));
+            assertFalse(factory.threads.isEmpty());
+            for (String thread : factory.threads) {
+                assertTrue(thread.startsWith("Object Pool Factory Test Factory"), thread);
+            }
+        } finally {
+            objectPool.close();
+            maintenanceExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void warmUpInBackground() throws Exception {
+        objectPool = ObjectPool.create(new IntegerObjectFactory(ofMillis(50))).minimum(2).warmUp().build();
+        assertEquals(2, objectPool.getOptions().getWarmUpCount());
+        assertSame(objectPool, objectPool.whenReady().get(5, TimeUnit.SECONDS));
+        assertEquals(2, objectPool.getSize(PooledObject.State.IDLE));
+    }
+
+    @Test
+    void healthCheck() throws Exception {
+        IntegerObjectFactory factory = new IntegerObjectFactory();
+        objectPool = ObjectPool.create(factory).healthCheckInterval(ofMillis(20)).healthCheckFailureThreshold(2).build();
+        ((ObjectPoolImpl<Integer>) objectPool).checkHealth();
+        // the probe never creates objects
+        assertEquals(0, objectPool.getSize());
+        assertTrue(objectPool.isAvailable());
+        factory.failing = true;
+        assertThrows(ObjectPoolException.class, () -> objectPool.borrowObject());
+        assertTrue(objectPool.isAvailable());
+        assertThrows(ObjectPoolException.class, () -> objectPool.borrowObject());
+        assertFalse(objectPool.isAvailable());
+        factory.failing = false;
+        Integer object = objectPool.borrowObject();
+        assertTrue(objectPool.isAvailable());
+        factory.invalid.add(object);
+        objectPool.returnObject(object);
+        await(() -> objectPool.getSize() == 0);
+        assertEquals(1, objectPool.getMetrics().getValidationFailureCount());
+        assertTrue(objectPool.isAvailable());
+    }
+
+    @Test
+    void autoSizing() throws Exception {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximum(10).autoSizingInterval(ofMillis(10)).build();
+        assertEquals(10, objectPool.getMetrics().getTargetSize());
+        objectPool.returnObjects(List.of(objectPool.borrowObject(), objectPool.borrowObject()));
+        await(() -> objectPool.getMetrics().getTargetSize() == 1);
+        assertEquals(1, objectPool.getSize());
+        List<Integer> objects = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            objects.add(objectPool.borrowObject());
+        }
+        assertTrue(objectPool.getMetrics().getTargetSize() >= 3);
+        assertEquals(3, objectPool.getSize(PooledObject.State.ACTIVE));
+        assertTrue(objectPool.getMetrics().getResizeCount() > 0);
+        objectPool.returnObjects(objects);
+    }
+
+    @Test
+    void borrowWithTimeout() throws Exception {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximum(1).build();
+        Integer object = objectPool.borrowObject(ofSeconds(1));
+        assertThrows(ObjectPoolException.class, () -> objectPool.borrowObject(ofMillis(50)));
+        CompletableFuture<Integer> patientBorrow = CompletableFuture.supplyAsync(
+                () -> objectPool.borrowObject(ofSeconds(10)), executor);
+        await(() -> getWaiterCount(objectPool) == 1);
+        CompletableFuture<Integer> urgentBorrow = CompletableFuture.supplyAsync(
+                () -> objectPool.borrowObject(ofSeconds(5)), executor);
+        await(() -> getWaiterCount(objectPool) == 2);
+        // the borrow with the earliest deadline is served first, even if it started to wait later
+        objectPool.returnObject(object);
+        assertEquals(object, urgentBorrow.get(5, TimeUnit.SECONDS));
+        assertFalse(patientBorrow.isDone());
+        objectPool.returnObject(object);
+        assertEquals(object, patientBorrow.get(5, TimeUnit.SECONDS));
+        objectPool.returnObject(object);
+    }
+
+    @Test
+    void borrowWithPriority() throws Exception {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximum(1).build();
+        Integer object = objectPool.borrowObject();
+        CompletableFuture<Integer> urgentBorrow = CompletableFuture.supplyAsync(
+                () -> objectPool.borrowObject(ofSeconds(5)), executor);
+        await(() -> getWaiterCount(objectPool) == 1);
+        CompletableFuture<Integer> importantBorrow = CompletableFuture.supplyAsync(
+                () -> objectPool.borrowObject(ofSeconds(10), 1), executor);
+        await(() -> getWaiterCount(objectPool) == 2);
+        objectPool.returnObject(object);
+        assertEquals(object, importantBorrow.get(5, TimeUnit.SECONDS));
+        assertFalse(urgentBorrow.isDone());
+        objectPool.returnObject(object);
+        assertEquals(object, urgentBorrow.get(5, TimeUnit.SECONDS));
+        objectPool.returnObject(object);
+    }
+
+    @Test
+    void budget() throws Exception {
+        ObjectPool.Budget budget = ObjectPool.createBudget(2);
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).name("Pool 1").budget(budget).build();
+        ObjectPool<Integer> otherPool = ObjectPool.create(new IntegerObjectFactory()).name("Pool 2").budget(budget)
+                .maximumWait(ofSeconds(5)).build();
+        try {
+            assertSame(budget, objectPool.getOptions().getBudget());
+            Integer object = objectPool.borrowObject();
+            objectPool.returnObjects(List.of(object, objectPool.borrowObject()));
+            assertEquals(2, budget.getSize());
+            // the idle objects of the first pool make room for the second pool
+            otherPool.borrowObject();
+            assertEquals(1, objectPool.getSize());
+            assertEquals(1, otherPool.getSize());
+            assertEquals(2, budget.getSize());
+            assertEquals(Integer.valueOf(1), budget.getUsage().get(objectPool));
+            assertEquals(Integer.valueOf(1), budget.getUsage().get(otherPool));
+            // a starving pool gets the object returned by another pool
+            object = objectPool.borrowObject();
+            CompletableFuture<Integer> future = CompletableFuture.supplyAsync(otherPool::borrowObject, executor);
+            await(() -> getWaiterCount(otherPool) == 1);
+            assertFalse(future.isDone());
+            objectPool.returnObject(object);
+            assertNotNull(future.get(5, TimeUnit.SECONDS));
+            assertEquals(0, objectPool.getSize());
+            assertEquals(2, otherPool.getSize());
+        } finally {
+            otherPool.close();
+        }
+        assertEquals(0, budget.getSize());
+    }
+
+    @Test
+    void returnWithExhaustedBudgetWithoutAllocations() {
+        ObjectPool.Budget budget = ObjectPool.createBudget(1);
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).name("Pool 1").budget(budget).build();
+        ObjectPool<Integer> otherPool = ObjectPool.create(new IntegerObjectFactory()).name("Pool 2").budget(budget)
+                .build();
+        try {
+            objectPool.returnObject(objectPool.borrowObject());
+            assertEquals(1, budget.getSize());
+            // each return happens while the budget is exhausted
+            long allocatedBytes = getAllocatedBytes(() -> borrowAndReturn(200_000));
+            assertTrue(allocatedBytes < 64 * 1024, "Allocated " + allocatedBytes + " bytes");
+        } finally {
+            otherPool.close();
+        }
+    }
+
+    @Test
+    void abandoned() throws Exception {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximum(1).abandonedTimeout(ofMillis(50))
+                .maintenanceInterval(ofMillis(20)).build();
+        objectPool.borrowObject();
+        await(() -> objectPool.getSize() == 0);
+        assertEquals(1, objectPool.getMetrics().getAbandonedCount());
+        assertNotNull(objectPool.borrowObject());
+    }
+
+    @Test
+    void notAbandonedWhileActivated() {
+        IntegerObjectFactory factory = new IntegerObjectFactory();
+        objectPool = ObjectPool.create(factory).maximum(1).abandonedTimeout(ofMillis(50))
+                .maintenanceInterval(ofMillis(5)).build();
+        objectPool.addObject();
+        factory.activationTime = ofMillis(30);
+        Integer object = objectPool.borrowObject();
+        assertEquals(PooledObject.State.ACTIVE, objectPool.getObjects().iterator().next().getState());
+        assertEquals(0, objectPool.getMetrics().getAbandonedCount());
+        objectPool.returnObject(object);
+    }
+
+    @Test
+    void notAbandonedWhenUsed() throws Exception {
+        ObjectPool<UsedResource> pool = ObjectPool.create(new UsedResourceFactory()).abandonedTimeout(ofMillis(50))
+                .maintenanceInterval(ofMillis(20)).build();
+        UsedResource resource = pool.borrowObject();
+        Thread.sleep(200);
+        assertEquals(1, pool.getSize(PooledObject.State.ACTIVE));
+        assertEquals(0, pool.getMetrics().getAbandonedCount());
+        pool.returnObject(resource);
+    }
+
+    @Test
+    void testOnBorrow() {
+        IntegerObjectFactory factory = new IntegerObjectFactory();
+        objectPool = ObjectPool.create(factory).testOnBorrow(true).validationInterval(Duration.ZERO).build();
+        Integer object = objectPool.borrowObject();
+        objectPool.returnObject(object);
+        factory.invalid.add(object);
+        assertNotEquals(object, objectPool.borrowObject());
+        assertEquals(1, objectPool.getSize());
+        assertEquals(1, objectPool.getMetrics().getValidationFailureCount());
+    }
+
+    @Test
+    void testOnBorrowSkippedWhenRecentlyValidated() {
+        IntegerObjectFactory factory = new IntegerObjectFactory();
+        objectPool = ObjectPool.create(factory).testOnBorrow(true).validationInterval(ofMinutes(1)).build();
+        Integer object = objectPool.borrowObject();
+        objectPool.returnObject(object);
+        factory.invalid.add(object);
+        assertEquals(object, objectPool.borrowObject());
+        assertEquals(0, objectPool.getMetrics().getValidationFailureCount());
+    }
+
+    @Test
+    void testOnReturn() {
+        IntegerObjectFactory factory = new IntegerObjectFactory();
+        objectPool = ObjectPool.create(factory).testOnReturn(true).build();
+        Integer object = objectPool.borrowObject();
+        factory.invalid.add(object);
+        objectPool.returnObject(object);
+        assertEquals(0, objectPool.getSize());
+        assertEquals(1, objectPool.getMetrics().getValidationFailureCount());
+    }
+
+    @Test
+    void testWhileIdle() throws Exception {
+        IntegerObjectFactory factory = new IntegerObjectFactory();
+        objectPool = ObjectPool.create(factory).testWhileIdle(true).validationInterval(ofMillis(10))
+                .maintenanceInterval(ofMillis(20)).build();
+        objectPool.addObject();
+        objectPool.addObject();
+        factory.invalid.add(objectPool.getObjects().iterator().next().get());
+        await(() -> objectPool.getSize() == 1);
+        assertEquals(1, objectPool.getSize(PooledObject.State.IDLE));
+        assertEquals(1, objectPool.getMetrics().getValidationFailureCount());
+    }
+
+    @Test
+    void retireOnReturn() {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximumReuseCount(2).build();
+        Integer object = objectPool.borrowObject();
+        objectPool.returnObject(object);
+        assertEquals(object, objectPool.borrowObject());
+        objectPool.returnObject(object);
+        assertNotEquals(object, objectPool.borrowObject());
+        assertEquals(1, objectPool.getMetrics().getRetiredCount());
+    }
+
+    @Test
+    void retireIdle() throws Exception {
+        objectPool = ObjectPool.create(new IntegerObjectFactory()).maximumReuseTime(ofMillis(100))
+                .maintenanceInterval(ofMillis(20)).build();
+        objectPool.addObject();
+        Integer object = objectPool.getObjects().iterator().next().get();
+        await(() -> objectPool.getMetrics().getRetiredCount() > 0);
+        await(() -> objectPool.getSize() > 0);
+        assertTrue(objectPool.getObjects().stream().noneMatch(pooledObject -> object.equals(pooledObject.get())));
+        assertTrue(objectPool.getMetrics().getRetiredCount() > 0);
+    }
+
+    @Test
+    void returnUnknownObject() {
+        objectPool.borrowObject();
+        Assertions.assertThrowsExactly(ObjectPoolException.class, () -> objectPool.returnObject(1000));
+    }
+
     @Test
     void invalidateObject() {
         Integer object = objectPool.borrowObject();
@@ -142,13 +824,97 @@ class ObjectPoolImplTest {
         assertEquals(1, objectPool.getObjects(PooledObject.State.IDLE).size());
     }
 
+    private void awaitIdle(int count) throws InterruptedException {
+        await(() -> objectPool.getSize(PooledObject.State.IDLE) >= count);
+        assertEquals(count, objectPool.getSize(PooledObject.State.IDLE));
+    }
+
+    /**
+     * Waits until a condition is met, and fails if it is not met within a few seconds.
+     */
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long endTime = System.nanoTime() + ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < endTime) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static int getWaiterCount(ObjectPool<?> pool) {
+        return ((ObjectPoolImpl<?>) pool).getWaiterCount();
+    }
+
+    /**
+     * Returns the memory allocated by the current thread while it runs an action, after the action ran once
+     * to warm up.
+     */
+    private static long getAllocatedBytes(Runnable action) {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+        action.run();
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId);
+        action.run();
+        return threadBean.getThreadAllocatedBytes(threadId) - allocatedBytes;
+    }
+
+    private void borrowAndReturn(int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            Integer object = objectPool.borrowObject();
+            objectPool.returnObject(object);
+        }
+    }
+
+    private static void spin(int micros) {
+        long endTime = System.nanoTime() + micros * 1000L;
+        while (System.nanoTime() < endTime) {
+            Thread.onSpinWait();
+        }
+    }
+
     private static class IntegerObjectFactory implements ActivableObjectFactory<Integer> {
 
         private AtomicInteger counter = new AtomicInteger(1);
+        private final Duration creationTime;
+        private final Set<Integer> invalid = ConcurrentHashMap.newKeySet();
+        private final Set<String> threads = ConcurrentHashMap.newKeySet();
+        private volatile boolean failing;
+        private volatile Duration activationTime = Duration.ZERO;
+        private final CountDownLatch inFlightLatch;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maximumInFlight = new AtomicInteger();
+
+        IntegerObjectFactory() {
+            this(Duration.ZERO);
+        }
+
+        IntegerObjectFactory(Duration creationTime) {
+            this.creationTime = creationTime;
+            this.inFlightLatch = new CountDownLatch(0);
+        }
+
+        /**
+         * Creates a factory which holds each creation until the given number of creations run in parallel.
+         */
+        IntegerObjectFactory(int parallelism) {
+            this.creationTime = Duration.ZERO;
+            this.inFlightLatch = new CountDownLatch(parallelism);
+        }
 
         @Override
         public Integer makeObject(ObjectPool<Integer> pool) throws Exception {
-            return counter.getAndIncrement();
+            threads.add(Thread.currentThread().getName());
+            maximumInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                inFlightLatch.countDown();
+                inFlightLatch.await(5, TimeUnit.SECONDS);
+                if (!creationTime.isZero()) Thread.sleep(creationTime.toMillis());
+                if (failing) throw new IllegalStateException("Cannot create objects");
+                return counter.getAndIncrement();
+            } finally {
+                inFlight.decrementAndGet();
+            }
         }
 
         @Override
@@ -157,8 +923,13 @@ class ObjectPoolImplTest {
         }
 
         @Override
-        public void activateObject(ObjectPool<Integer> pool, PooledObject<Integer> object) throws Exception {
+        public boolean validateObject(ObjectPool<Integer> pool, Integer object) throws Exception {
+            return !invalid.contains(object);
+        }
 
+        @Override
+        public void activateObject(ObjectPool<Integer> pool, PooledObject<Integer> object) throws Exception {
+            if (!activationTime.isZero()) Thread.sleep(activationTime.toMillis());
         }
 
         @Override
@@ -166,4 +937,25 @@ class ObjectPoolImplTest {
 
         }
     }
-}
\ No newline at end of file
+
+    private static class UsedResource implements UsageReporter {
+
+        @Override
+        public LocalDateTime getLastUsedTime() {
+            return LocalDateTime.now();
+        }
+    }
+
+    private static class UsedResourceFactory implements ObjectFactory<UsedResource> {
+
+        @Override
+        public UsedResource makeObject(ObjectPool<UsedResource> pool) {
+            return new UsedResource();
+        }
+
+        @Override
+        public void destroyObject(ObjectPool<UsedResource> pool, UsedResource object) {
+            //  do nothing
+        }
+    }
+}
@@ -13,9 +13,12 @@ class ObjectPoolMetricsImplTest {
         assertEquals(0, metrics.getBorrowedCount());
         assertEquals(0, metrics.getBorrowedDuration().toNanos());
 
-        metrics.updateBorrowedDuration(100);
+        metrics.updateBorrowCount();
         assertEquals(1, metrics.getBorrowedCount());
+
+        metrics.updateBorrowedDuration(100);
         assertEquals(100, metrics.getBorrowedDuration().toNanos());
+        assertEquals(1, metrics.getHoldTimeHistogram().getCount());
     }
 
     @Test
@@ -30,4 +33,21 @@ class ObjectPoolMetricsImplTest {
         assertEquals(100, metrics.getReleasedDuration().toNanos());
     }
 
-}
\ No newline at end of file
+    @Test
+    void createObject() {
+        ObjectPoolMetricsImpl metrics = new ObjectPoolMetricsImpl();
+        metrics.updateCreatedCount();
+        metrics.updateCreationFailureCount();
+        assertEquals(1, metrics.getCreatedCount());
+        assertEquals(1, metrics.getCreationFailureCount());
+    }
+
+    @Test
+    void warmUp() {
+        ObjectPoolMetricsImpl metrics = new ObjectPoolMetricsImpl();
+        assertEquals(1, metrics.getWarmUpProgress(), 0);
+        metrics.updateWarmUpCount(4);
+        metrics.updateWarmedUpCount();
+        assertEquals(0.25, metrics.getWarmUpProgress(), 0.001);
+    }
+}
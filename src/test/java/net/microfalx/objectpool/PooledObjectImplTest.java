@@ -4,7 +4,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class PooledObjectImplTest {
 
@@ -21,5 +21,38 @@ class PooledObjectImplTest {
         assertEquals(PooledObject.State.IDLE, object.getState());
     }
 
+    @Test
+    void stateCounters() {
+        StateCounters stateCounters = new StateCounters();
+        PooledObjectImpl<String> object = new PooledObjectImpl<>(objectPool, "Demo", stateCounters);
+        assertEquals(1, stateCounters.get(PooledObject.State.IDLE));
+        object.changeState(PooledObject.State.ACTIVE);
+        assertEquals(0, stateCounters.get(PooledObject.State.IDLE));
+        assertEquals(1, stateCounters.get(PooledObject.State.ACTIVE));
+        object.changeState(PooledObject.State.DESTROYING);
+        object.changeState(PooledObject.State.DESTROYED);
+        assertEquals(0, stateCounters.get(PooledObject.State.ACTIVE));
+        assertEquals(0, stateCounters.get(PooledObject.State.DESTROYED));
+    }
+
+    @Test
+    void changeState() {
+        PooledObjectImpl<String> object = new PooledObjectImpl<>(objectPool, "Demo");
+        assertTrue(object.changeState(PooledObject.State.IDLE, PooledObject.State.ACTIVE));
+        assertFalse(object.changeState(PooledObject.State.IDLE, PooledObject.State.ACTIVE));
+        assertTrue(object.changeState(PooledObject.State.ACTIVE, PooledObject.State.RETURNING));
+        assertFalse(object.changeState(PooledObject.State.ACTIVE, PooledObject.State.RETURNING));
+        assertEquals(PooledObject.State.RETURNING, object.getState());
+    }
+
+    @Test
+    void changeStateNotAllowed() {
+        PooledObjectImpl<String> object = new PooledObjectImpl<>(objectPool, "Demo");
+        assertFalse(object.changeState(PooledObject.State.IDLE, PooledObject.State.RETURNING));
+        assertNull(object.changeState(PooledObject.State.DESTROYED));
+        assertEquals(PooledObject.State.IDLE, object.changeState(PooledObject.State.DESTROYING));
+        assertNull(object.changeState(PooledObject.State.IDLE));
+        assertEquals(PooledObject.State.DESTROYING, object.getState());
+    }
 
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package net.microfalx.objectpool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how the cost of returning an object scales with the size of the pool.
+ * <p>
+ * The pool is fully populated before the measurement, so every borrow is served from the idle objects and the
+ * return has to locate the pooled object among all the objects of the pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReturnObjectBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    private int size;
+
+    private ObjectPool<Object> pool;
+
+    @Setup
+    public void setup() {
+        pool = ObjectPool.create(BenchmarkObjectFactory.create(false)).maximum(size).build();
+        for (int i = 0; i < size; i++) {
+            pool.addObject();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public Object borrowAndReturn() {
+        Object object = pool.borrowObject();
+        pool.returnObject(object);
+        return object;
+    }
+}
@@ -0,0 +1,46 @@
+package net.microfalx.objectpool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures borrow/return cycles when many more threads than pooled objects compete for the pool, which exercises
+ * the hand-off of returned objects to waiting borrowers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+public class SaturatedPoolBenchmark {
+
+    @Param({"LIFO", "FIFO", "THREAD_AFFINITY"})
+    private ObjectPool.Strategy strategy;
+
+    @Param({"1", "4"})
+    private int size;
+
+    private ObjectPool<Object> pool;
+
+    @Setup
+    public void setup() {
+        pool = ObjectPool.create(BenchmarkObjectFactory.create(false)).strategy(strategy).maximum(size)
+                .maximumWait(Duration.ofMinutes(1)).warmUp(size).warmUpTimeout(Duration.ofMinutes(1)).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public Object borrowAndReturn() {
+        Object object = pool.borrowObject();
+        pool.returnObject(object);
+        return object;
+    }
+}
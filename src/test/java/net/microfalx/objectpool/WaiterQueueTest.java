@@ -0,0 +1,74 @@
+package net.microfalx.objectpool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WaiterQueueTest {
+
+    private final WaiterQueue<String> waiters = new WaiterQueue<>();
+    private final List<WaiterQueue.Waiter<String>> woken = new ArrayList<>();
+    private PooledObjectImpl<String> object;
+    private long currentTime;
+
+    @BeforeEach
+    void before() {
+        ObjectPool<String> objectPool = Mockito.mock(ObjectPool.class);
+        object = new PooledObjectImpl<>(objectPool, "Demo");
+        currentTime = System.nanoTime();
+    }
+
+    @Test
+    void earliestDeadlineFirst() {
+        WaiterQueue.Waiter<String> lateWaiter = waiters.enqueue(woken::add, currentTime + 60_000_000_000L, 0);
+        WaiterQueue.Waiter<String> earlyWaiter = waiters.enqueue(woken::add, currentTime + 50_000_000L, 0);
+        assertTrue(waiters.handoff(object));
+        assertEquals(List.of(earlyWaiter), woken);
+        assertSame(object, earlyWaiter.get());
+        assertFalse(lateWaiter.isDone());
+    }
+
+    @Test
+    void sameDeadline() {
+        WaiterQueue.Waiter<String> firstWaiter = waiters.enqueue(woken::add, currentTime + 50_000_000L, 0);
+        waiters.enqueue(woken::add, currentTime + 50_000_000L, 0);
+        waiters.signal();
+        assertEquals(List.of(firstWaiter), woken);
+        assertNull(firstWaiter.get());
+    }
+
+    @Test
+    void priority() {
+        waiters.enqueue(woken::add, currentTime + 50_000_000L, 0);
+        WaiterQueue.Waiter<String> urgentWaiter = waiters.enqueue(woken::add, currentTime + 60_000_000_000L, 1);
+        assertTrue(waiters.handoff(object));
+        assertEquals(List.of(urgentWaiter), woken);
+    }
+
+    @Test
+    void expired() {
+        WaiterQueue.Waiter<String> expiredWaiter = waiters.enqueue(woken::add, currentTime - 1, 0);
+        assertFalse(waiters.handoff(object));
+        assertTrue(woken.isEmpty());
+        assertTrue(expiredWaiter.isDone());
+        assertNull(expiredWaiter.get());
+        assertTrue(waiters.isEmpty());
+        WaiterQueue.Waiter<String> waiter = waiters.enqueue(woken::add, currentTime + 50_000_000L, 0);
+        assertTrue(waiters.handoff(object));
+        assertEquals(List.of(waiter), woken);
+    }
+
+    @Test
+    void cancel() {
+        WaiterQueue.Waiter<String> waiter = waiters.enqueue(woken::add, currentTime + 50_000_000L, 0);
+        assertTrue(waiters.cancel(waiter));
+        assertTrue(waiters.isEmpty());
+        assertFalse(waiters.handoff(object));
+        assertTrue(woken.isEmpty());
+    }
+}